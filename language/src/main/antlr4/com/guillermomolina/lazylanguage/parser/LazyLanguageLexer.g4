@@ -48,10 +48,13 @@ fragment DIGIT: [0-9];
 fragment HEX_DIGIT: [0-9] | [a-f] | [A-F];
 fragment OCT_DIGIT: [0-7];
 fragment BINARY_DIGIT: '0' | '1';
+fragment EXPONENT: [eE] [+-]? DIGIT+;
 fragment TAB: '\t';
 fragment STRING_CHAR: ~('"' | '\\' | '\r' | '\n');
 
 IDENTIFIER: LETTER (LETTER | DIGIT)*;
 STRING_LITERAL: '"' STRING_CHAR* '"';
+DECIMAL_LITERAL: DIGIT+ ('.' DIGIT+)? [mM];
+FLOAT_LITERAL: DIGIT+ '.' DIGIT+ EXPONENT? | DIGIT+ EXPONENT;
 NUMERIC_LITERAL: '0' | NON_ZERO_DIGIT DIGIT*;
 
@@ -96,6 +96,8 @@ factor:
 		IDENTIFIER memberExpression?
 		| STRING_LITERAL
 		| NUMERIC_LITERAL
+		| FLOAT_LITERAL
+		| DECIMAL_LITERAL
 		| LPAREN expression RPAREN
 	);
 
@@ -40,6 +40,7 @@
  */
 package com.guillermomolina.lazylanguage;
 
+import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
 import com.oracle.truffle.api.frame.FrameSlot;
 import com.oracle.truffle.api.frame.MaterializedFrame;
 import com.oracle.truffle.api.frame.VirtualFrame;
@@ -60,7 +61,11 @@ final class LLEvaluateLocalNode extends RootNode {
     public Object execute(VirtualFrame currentFrame) {
         for (FrameSlot slot : inspectFrame.getFrameDescriptor().getSlots()) {
             if (variable.equals(slot.getIdentifier())) {
-                return inspectFrame.getValue(slot);
+                Object value = inspectFrame.getValue(slot);
+                if (value instanceof LLBigNumber) {
+                    ((LLBigNumber) value).share();
+                }
+                return value;
             }
         }
         return null;
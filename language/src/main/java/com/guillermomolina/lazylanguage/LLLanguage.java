@@ -65,9 +65,12 @@ import com.guillermomolina.lazylanguage.nodes.controlflow.LLReturnNode;
 import com.guillermomolina.lazylanguage.nodes.controlflow.LLWhileNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLAddNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLBigIntegerLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDispatchNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLDivNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLEqualNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLFunctionLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterOrEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterThanNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLInvokeNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLLessOrEqualNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLLessThanNode;
@@ -81,11 +84,15 @@ import com.guillermomolina.lazylanguage.nodes.expression.LLWritePropertyNode;
 import com.guillermomolina.lazylanguage.nodes.local.LLLexicalScope;
 import com.guillermomolina.lazylanguage.nodes.local.LLReadLocalVariableNode;
 import com.guillermomolina.lazylanguage.nodes.local.LLWriteLocalVariableNode;
+import com.guillermomolina.lazylanguage.parser.LLAstCache;
+import com.guillermomolina.lazylanguage.parser.LLAstSnapshot;
 import com.guillermomolina.lazylanguage.parser.LLNodeFactory;
+import com.guillermomolina.lazylanguage.parser.LLParseCache;
 import com.guillermomolina.lazylanguage.parser.LLParser;
 import com.guillermomolina.lazylanguage.parser.LazyLanguageLexer;
 import com.guillermomolina.lazylanguage.parser.LazyLanguageParser;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 import com.guillermomolina.lazylanguage.runtime.LLContext;
 import com.guillermomolina.lazylanguage.runtime.LLFunction;
 import com.guillermomolina.lazylanguage.runtime.LLFunctionRegistry;
@@ -93,6 +100,7 @@ import com.guillermomolina.lazylanguage.runtime.LLLanguageView;
 import com.guillermomolina.lazylanguage.runtime.LLNull;
 import com.guillermomolina.lazylanguage.runtime.LLObject;
 import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.Option;
 import com.oracle.truffle.api.RootCallTarget;
 import com.oracle.truffle.api.Scope;
 import com.oracle.truffle.api.Truffle;
@@ -112,6 +120,12 @@ import com.oracle.truffle.api.object.DynamicObjectLibrary;
 import com.oracle.truffle.api.object.Shape;
 import com.oracle.truffle.api.source.Source;
 
+import org.graalvm.options.OptionCategory;
+import org.graalvm.options.OptionDescriptors;
+import org.graalvm.options.OptionKey;
+import org.graalvm.options.OptionStability;
+import org.graalvm.options.OptionValues;
+
 /**
  * Lazy is a lazy language to demonstrate and showcase features of Truffle. The implementation is as
  * lazy and clean as possible in order to help understanding the ideas and concepts of Truffle.
@@ -129,7 +143,10 @@ import com.oracle.truffle.api.source.Source;
  * <li>Number: arbitrary precision integer numbers. The implementation uses the Java primitive type
  * {@code long} to represent numbers that fit into the 64 bit range, and {@link LLBigNumber} for
  * numbers that exceed the range. Using a primitive type such as {@code long} is crucial for
- * performance.
+ * performance. Numbers written with a fraction or an exponent are floating point numbers,
+ * implemented as the Java primitive type {@code double}; an operation with a {@code double} operand
+ * has a {@code double} result. Numbers with an {@code m} suffix, like {@code 12.50m}, are
+ * {@link LLDecimal fixed-point decimals} for exact decimal computations.
  * <li>Boolean: implemented as the Java primitive type {@code boolean}.
  * <li>String: implemented as the Java standard type {@link String}.
  * <li>Function: implementation type {@link LLFunction}.
@@ -149,7 +166,7 @@ import com.oracle.truffle.api.source.Source;
  * <li>Basic arithmetic, logical, and comparison operations: {@link LLAddNode +}, {@link LLSubNode
  * -}, {@link LLMulNode *}, {@link LLDivNode /}, {@link LLLogicalAndNode logical and},
  * {@link LLLogicalOrNode logical or}, {@link LLEqualNode ==}, !=, {@link LLLessThanNode &lt;},
- * {@link LLLessOrEqualNode &le;}, &gt;, &ge;.
+ * {@link LLLessOrEqualNode &le;}, {@link LLGreaterThanNode &gt;}, {@link LLGreaterOrEqualNode &ge;}.
  * <li>Local variables: local variables must be defined (via a {@link LLWriteLocalVariableNode
  * write}) before they can be used (by a {@link LLReadLocalVariableNode read}). Local variables are
  * not visible outside of the block where they were first defined.
@@ -202,46 +219,125 @@ public final class LLLanguage extends TruffleLanguage<LLContext> {
     public static final String ID = "lazy";
     public static final String MIME_TYPE = "application/x-lazy";
 
+    @Option(help = "Maximum number of parsed sources shared by all contexts of an engine (0 disables the cache).", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Integer> ParseCacheSize = new OptionKey<>(64);
+
+    @Option(help = "Parse function bodies on their first invocation instead of when the source is loaded.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Boolean> LazyParsing = new OptionKey<>(false);
+
+    @Option(help = "Build the trees of the functions of a source in parallel.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Boolean> ParallelParsing = new OptionKey<>(false);
+
+    @Option(help = "Directory of a persistent cache of parsed sources, which are loaded from it without running the parser (empty disables the cache).", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<String> AstCacheDir = new OptionKey<>("");
+
+    @Option(help = "Replace operations on literals with their result while parsing. Tools can no longer step into or observe the folded operands.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Boolean> ConstantFolding = new OptionKey<>(false);
+
+    @Option(help = "Infer the types of the local variables of each function while parsing, to drop the unboxing of operands that are never foreign values.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Boolean> TypeInference = new OptionKey<>(false);
+
+    @Option(help = "Build the branches of if statements on their first execution.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Boolean> LazyBranches = new OptionKey<>(false);
+
+    @Option(help = "Execute functions with a bytecode interpreter instead of walking their trees. A function goes back to its tree once a tool instruments it.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Boolean> Bytecode = new OptionKey<>(false);
+
+    @Option(help = "Number of calls after which a function is compiled to a JVM class, if it only computes with numbers and booleans (0 disables the compilation).", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Integer> JvmCompilationThreshold = new OptionKey<>(0);
+
+    @Option(help = "Execute calls in tail position, like return f(x), without growing the stack. The functions that made them are missing from stack traces.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Boolean> TailCalls = new OptionKey<>(false);
+
+    @Option(help = "Number of call targets a call site that calls more targets than its inline cache holds counts the calls of (0 disables the counting).", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Integer> MegamorphicCacheSize = new OptionKey<>(0);
+
+    @Option(help = "Number of calls of a call target after which a megamorphic call site calls it directly.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Integer> MegamorphicPromotionThreshold = new OptionKey<>(1000);
+
+    @Option(help = "Maximum number of call targets a megamorphic call site calls directly.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL) //
+    public static final OptionKey<Integer> MegamorphicDirectCalls = new OptionKey<>(4);
+
     private final Shape rootShape;
 
+    /* Initialized with the options of the first context, see areOptionsCompatible. */
+    private volatile LLParseCache parseCache;
+    private volatile boolean lazyParsing;
+    private volatile boolean parallelParsing;
+    private volatile LLAstCache astCache;
+    private volatile boolean constantFolding;
+    private volatile boolean typeInference;
+    private volatile boolean lazyBranches;
+    private volatile boolean bytecode;
+    private volatile int jvmCompilationThreshold;
+    private volatile boolean tailCalls;
+    private volatile int megamorphicCacheSize;
+    private volatile int megamorphicPromotionThreshold;
+    private volatile int megamorphicDirectCalls;
+
     public LLLanguage() {
         counter.incrementAndGet();
         this.rootShape = Shape.newBuilder().layout(LLObject.class).build();
     }
 
+    @Override
+    protected OptionDescriptors getOptionDescriptors() {
+        return new LLLanguageOptionDescriptors();
+    }
+
+    /*
+     * Contexts that share this language instance also share its parse cache, so they must agree on
+     * the options that configure it and the trees stored in it.
+     */
+    @Override
+    protected boolean areOptionsCompatible(OptionValues firstOptions, OptionValues newOptions) {
+        return ParseCacheSize.getValue(firstOptions).equals(ParseCacheSize.getValue(newOptions)) &&
+                        LazyParsing.getValue(firstOptions).equals(LazyParsing.getValue(newOptions)) &&
+                        ParallelParsing.getValue(firstOptions).equals(ParallelParsing.getValue(newOptions)) &&
+                        AstCacheDir.getValue(firstOptions).equals(AstCacheDir.getValue(newOptions)) &&
+                        ConstantFolding.getValue(firstOptions).equals(ConstantFolding.getValue(newOptions)) &&
+                        TypeInference.getValue(firstOptions).equals(TypeInference.getValue(newOptions)) &&
+                        LazyBranches.getValue(firstOptions).equals(LazyBranches.getValue(newOptions)) &&
+                        Bytecode.getValue(firstOptions).equals(Bytecode.getValue(newOptions)) &&
+                        JvmCompilationThreshold.getValue(firstOptions).equals(JvmCompilationThreshold.getValue(newOptions)) &&
+                        TailCalls.getValue(firstOptions).equals(TailCalls.getValue(newOptions)) &&
+                        MegamorphicCacheSize.getValue(firstOptions).equals(MegamorphicCacheSize.getValue(newOptions)) &&
+                        MegamorphicPromotionThreshold.getValue(firstOptions).equals(MegamorphicPromotionThreshold.getValue(newOptions)) &&
+                        MegamorphicDirectCalls.getValue(firstOptions).equals(MegamorphicDirectCalls.getValue(newOptions));
+    }
+
     @Override
     protected LLContext createContext(Env env) {
+        if (parseCache == null) {
+            synchronized (this) {
+                if (parseCache == null) {
+                    lazyParsing = LazyParsing.getValue(env.getOptions());
+                    parallelParsing = ParallelParsing.getValue(env.getOptions());
+                    constantFolding = ConstantFolding.getValue(env.getOptions());
+                    typeInference = TypeInference.getValue(env.getOptions());
+                    lazyBranches = LazyBranches.getValue(env.getOptions());
+                    bytecode = Bytecode.getValue(env.getOptions());
+                    jvmCompilationThreshold = JvmCompilationThreshold.getValue(env.getOptions());
+                    tailCalls = TailCalls.getValue(env.getOptions());
+                    megamorphicCacheSize = MegamorphicCacheSize.getValue(env.getOptions());
+                    megamorphicPromotionThreshold = MegamorphicPromotionThreshold.getValue(env.getOptions());
+                    megamorphicDirectCalls = MegamorphicDirectCalls.getValue(env.getOptions());
+                    String astCacheDir = AstCacheDir.getValue(env.getOptions());
+                    astCache = astCacheDir.isEmpty() ? null : new LLAstCache(this, astCacheDir);
+                    parseCache = new LLParseCache(ParseCacheSize.getValue(env.getOptions()));
+                }
+            }
+        }
         return new LLContext(this, env, new ArrayList<>(EXTERNAL_BUILTINS));
     }
 
     @Override
     protected CallTarget parse(ParsingRequest request) throws Exception {
-        Source source = request.getSource();
-        Map<String, RootCallTarget> functions;
         /*
          * Parse the provided source. At this point, we do not have a LLContext yet. Registration of
          * the functions with the LLContext happens lazily in LLEvalRootNode.
          */
-        if (request.getArgumentNames().isEmpty()) {
-            LLParser parser = new LLParser(this, source);
-            functions = parser.getAllFunctions();
-        } else {
-            StringBuilder sb = new StringBuilder();
-            sb.append("function main(");
-            String sep = "";
-            for (String argumentName : request.getArgumentNames()) {
-                sb.append(sep);
-                sb.append(argumentName);
-                sep = ",";
-            }
-            sb.append(") { return ");
-            sb.append(source.getCharacters());
-            sb.append(";}");
-            String language = source.getLanguage() == null ? ID : source.getLanguage();
-            Source decoratedSource = Source.newBuilder(language, sb.toString(), source.getName()).build();
-            LLParser parser = new LLParser(this, decoratedSource);
-            functions = parser.getAllFunctions();
-        }
+        Map<String, RootCallTarget> functions = parseFunctions(request.getSource(), request.getArgumentNames());
 
         RootCallTarget main = functions.get("main");
         RootNode evalMain;
@@ -263,6 +359,60 @@ public final class LLLanguage extends TruffleLanguage<LLContext> {
         return Truffle.getRuntime().createCallTarget(evalMain);
     }
 
+    /**
+     * Returns the functions defined by a source. The trees of a source that was already parsed by
+     * any context of this engine are taken from the {@link LLParseCache}, and if enabled, sources
+     * parsed by an earlier run are rebuilt from the {@link LLAstCache}. If argument names are
+     * given, the source is an expression that is wrapped into a {@code main} function with these
+     * parameters.
+     */
+    public Map<String, RootCallTarget> parseFunctions(Source source, List<String> argumentNames) {
+        LLParseCache cache = parseCache;
+        if (cache != null) {
+            Map<String, RootCallTarget> cached = cache.get(source, argumentNames);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Source parsedSource = source;
+        if (!argumentNames.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("function main(");
+            String sep = "";
+            for (String argumentName : argumentNames) {
+                sb.append(sep);
+                sb.append(argumentName);
+                sep = ",";
+            }
+            sb.append(") { return ");
+            sb.append(source.getCharacters());
+            sb.append(";}");
+            String language = source.getLanguage() == null ? ID : source.getLanguage();
+            parsedSource = Source.newBuilder(language, sb.toString(), source.getName()).build();
+        }
+
+        /* Lazily parsed functions are cheap to load, the AST cache would build them eagerly. */
+        LLAstCache snapshots = lazyParsing ? null : astCache;
+        Map<String, RootCallTarget> functions = null;
+        if (snapshots != null) {
+            functions = snapshots.load(getCurrentContext().getEnv(), parsedSource);
+        }
+        if (functions == null) {
+            LLAstSnapshot snapshot = snapshots == null ? null : new LLAstSnapshot();
+            LLParser parser = new LLParser(this, parsedSource, lazyParsing, parallelParsing, snapshot);
+            functions = parser.getAllFunctions();
+            if (snapshots != null) {
+                snapshots.store(getCurrentContext().getEnv(), parsedSource, snapshot);
+            }
+        }
+
+        if (cache != null) {
+            return cache.put(source, argumentNames, functions);
+        }
+        return functions;
+    }
+
     @Override
     protected Object getLanguageView(LLContext context, Object value) {
         return LLLanguageView.create(value);
@@ -331,6 +481,42 @@ public final class LLLanguage extends TruffleLanguage<LLContext> {
         return rootShape;
     }
 
+    public boolean isConstantFolding() {
+        return constantFolding;
+    }
+
+    public boolean isTypeInference() {
+        return typeInference;
+    }
+
+    public boolean isLazyBranches() {
+        return lazyBranches;
+    }
+
+    public boolean isBytecode() {
+        return bytecode;
+    }
+
+    public int getJvmCompilationThreshold() {
+        return jvmCompilationThreshold;
+    }
+
+    public boolean isTailCalls() {
+        return tailCalls;
+    }
+
+    public int getMegamorphicCacheSize() {
+        return megamorphicCacheSize;
+    }
+
+    public int getMegamorphicPromotionThreshold() {
+        return megamorphicPromotionThreshold;
+    }
+
+    public int getMegamorphicDirectCalls() {
+        return megamorphicDirectCalls;
+    }
+
     /**
      * Allocate an empty object. All new objects initially have no properties. Properties are added
      * when they are first stored, i.e., the store triggers a shape change of the object.
@@ -42,12 +42,15 @@ package com.guillermomolina.lazylanguage.builtins;
 
 import com.oracle.truffle.api.dsl.GenerateNodeFactory;
 import com.oracle.truffle.api.dsl.NodeChild;
+import com.oracle.truffle.api.dsl.NodeFactory;
 import com.oracle.truffle.api.dsl.UnsupportedSpecializationException;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.UnexpectedResultException;
 import com.guillermomolina.lazylanguage.LLException;
 import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLInvokeNode;
 import com.guillermomolina.lazylanguage.runtime.LLContext;
+import com.guillermomolina.lazylanguage.runtime.LLFunction;
 import com.guillermomolina.lazylanguage.runtime.LLFunctionRegistry;
 
 /**
@@ -62,6 +65,16 @@ import com.guillermomolina.lazylanguage.runtime.LLFunctionRegistry;
 @GenerateNodeFactory
 public abstract class LLBuiltinNode extends LLExpressionNode {
 
+    /** The factory that created this node, see {@link #create}. */
+    private NodeFactory<? extends LLBuiltinNode> factory;
+
+    /** Creates the builtin node of {@code factory}, which evaluates the given arguments. */
+    public static LLBuiltinNode create(NodeFactory<? extends LLBuiltinNode> factory, LLExpressionNode[] argumentNodes) {
+        LLBuiltinNode builtinNode = factory.createNode((Object) argumentNodes);
+        builtinNode.factory = factory;
+        return builtinNode;
+    }
+
     @Override
     public final Object executeGeneric(VirtualFrame frame) {
         try {
@@ -87,4 +100,37 @@ public abstract class LLBuiltinNode extends LLExpressionNode {
     }
 
     protected abstract Object execute(VirtualFrame frame);
+
+    /**
+     * Returns whether the builtin has no side effects, see {@link LLFunction#getPureAssumption()}.
+     * Builtins are not pure unless they override this method.
+     */
+    public boolean isPure() {
+        return false;
+    }
+
+    /**
+     * Returns whether a call can execute the builtin in the frame of the caller, see
+     * {@link #createInline}. Builtins that look at the stack, like {@link LLStackTraceBuiltin}, or
+     * that call other functions must not. Builtins are not inlined unless they override this
+     * method.
+     */
+    public boolean isInlinable() {
+        return false;
+    }
+
+    /**
+     * Returns a new instance of this builtin that evaluates the argument expressions of an
+     * {@link LLInvokeNode invoke expression} itself, so that the invoke expression can execute the
+     * builtin without a call. Returns {@code null} if the builtin is not {@link #isInlinable
+     * inlinable}, or does not take that number of arguments.
+     */
+    public LLBuiltinNode createInline(LLExpressionNode[] argumentNodes) {
+        if (!isInlinable() || factory == null || factory.getExecutionSignature().size() != argumentNodes.length) {
+            return null;
+        }
+        LLBuiltinNode builtinNode = create(factory, argumentNodes);
+        builtinNode.setUnavailableSourceSection();
+        return builtinNode;
+    }
 }
@@ -62,4 +62,9 @@ public abstract class LLGetSizeBuiltin extends LLBuiltinNode {
             throw new LLException("Element is not a valid array.", this);
         }
     }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
 }
@@ -56,4 +56,14 @@ public abstract class LLHasSizeBuiltin extends LLBuiltinNode {
     public boolean hasSize(Object obj, @CachedLibrary("obj") InteropLibrary arrays) {
         return arrays.hasArrayElements(obj);
     }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+    @Override
+    public boolean isInlinable() {
+        return true;
+    }
 }
@@ -56,4 +56,14 @@ public abstract class LLIsExecutableBuiltin extends LLBuiltinNode {
     public boolean isExecutable(Object obj, @CachedLibrary("obj") InteropLibrary executables) {
         return executables.isExecutable(obj);
     }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+    @Override
+    public boolean isInlinable() {
+        return true;
+    }
 }
@@ -65,4 +65,8 @@ public abstract class LLIsInstanceBuiltin extends LLBuiltinNode {
         }
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
 }
@@ -56,4 +56,14 @@ public abstract class LLIsNullBuiltin extends LLBuiltinNode {
     public boolean isExecutable(Object obj, @CachedLibrary("obj") InteropLibrary values) {
         return values.isNull(obj);
     }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+    @Override
+    public boolean isInlinable() {
+        return true;
+    }
 }
@@ -53,4 +53,9 @@ public abstract class LLNanoTimeBuiltin extends LLBuiltinNode {
     public long nanoTime() {
         return System.nanoTime();
     }
+
+    @Override
+    public boolean isInlinable() {
+        return true;
+    }
 }
@@ -71,4 +71,8 @@ public abstract class LLPrintlnBuiltin extends LLBuiltinNode {
         return value;
     }
 
+    @Override
+    public boolean isInlinable() {
+        return true;
+    }
 }
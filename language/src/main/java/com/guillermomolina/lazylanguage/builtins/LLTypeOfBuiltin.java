@@ -69,4 +69,13 @@ public abstract class LLTypeOfBuiltin extends LLBuiltinNode {
         return LLNull.SINGLETON;
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+    @Override
+    public boolean isInlinable() {
+        return true;
+    }
 }
@@ -40,7 +40,16 @@
  */
 package com.guillermomolina.lazylanguage.nodes;
 
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLBlockNode;
+import com.guillermomolina.lazylanguage.nodes.local.LLReadLocalVariableNode;
+import com.guillermomolina.lazylanguage.nodes.local.LLWriteLocalVariableNode;
+import com.guillermomolina.lazylanguage.nodes.util.LLUnboxNode;
+import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.dsl.NodeChild;
+import com.oracle.truffle.api.nodes.Node;
 
 /**
  * Utility base class for operations that take two arguments (per convention called "left" and
@@ -50,4 +59,76 @@ import com.oracle.truffle.api.dsl.NodeChild;
 @NodeChild("leftNode")
 @NodeChild("rightNode")
 public abstract class LLBinaryNode extends LLExpressionNode {
+
+    /**
+     * The assumption that no tool instruments the function, if this operation is an accumulation.
+     * Resolved on the first execution, see {@link #isAccumulation()}.
+     */
+    @CompilationFinal private Assumption accumulation;
+    @CompilationFinal private boolean accumulationResolved;
+
+    public abstract LLExpressionNode getLeftNode();
+
+    public abstract LLExpressionNode getRightNode();
+
+    /**
+     * Applies the operation to operands that were already evaluated, without executing the child
+     * nodes. Used by the bytecode interpreter, which creates operation nodes without children.
+     */
+    public abstract Object executeEvaluated(Object left, Object right);
+
+    /**
+     * Returns whether this operation is an accumulation: the value of a statement like
+     * {@code x = x * i}, whose left operand reads the variable the result is written to. The left
+     * value is not used after the operation, so if it is a {@link LLBigNumber} that no other value
+     * shares, the operation can update it in place. Tools can keep the values they observe, so an
+     * instrumented function has no accumulations.
+     */
+    protected final boolean isAccumulation() {
+        if (!accumulationResolved) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            accumulation = resolveAccumulation();
+            accumulationResolved = true;
+        }
+        return accumulation != null && accumulation.isValid();
+    }
+
+    private Assumption resolveAccumulation() {
+        Node parent = getParent();
+        LLReadLocalVariableNode leftRead = getLeftRead();
+        if (parent instanceof LLWriteLocalVariableNode && parent.getParent() instanceof LLBlockNode && leftRead != null &&
+                        leftRead.getSlot() == ((LLWriteLocalVariableNode) parent).getSlot() && getRootNode() instanceof LLRootNode) {
+            return ((LLRootNode) getRootNode()).getNoToolAttached();
+        }
+        return null;
+    }
+
+    private LLReadLocalVariableNode getLeftRead() {
+        LLExpressionNode left = getLeftNode();
+        if (left instanceof LLUnboxNode) {
+            left = ((LLUnboxNode) left).getValueNode();
+        }
+        return left instanceof LLReadLocalVariableNode ? (LLReadLocalVariableNode) left : null;
+    }
+
+    /**
+     * Returns whether {@code node} reads the left operand of an accumulation, so the value it reads
+     * is not shared.
+     */
+    public static boolean isAccumulated(LLReadLocalVariableNode node) {
+        Node parent = node.getParent();
+        if (parent instanceof LLUnboxNode) {
+            parent = parent.getParent();
+        }
+        return parent instanceof LLBinaryNode && ((LLBinaryNode) parent).getLeftRead() == node && ((LLBinaryNode) parent).isAccumulation();
+    }
+
+    @Override
+    public Node copy() {
+        /* A copy can be part of another tree, which resolves it again. */
+        LLBinaryNode copy = (LLBinaryNode) super.copy();
+        copy.accumulation = null;
+        copy.accumulationResolved = false;
+        return copy;
+    }
 }
@@ -40,16 +40,23 @@
  */
 package com.guillermomolina.lazylanguage.nodes;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.RootCallTarget;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.DirectCallNode;
+import com.oracle.truffle.api.nodes.IndirectCallNode;
 import com.oracle.truffle.api.nodes.RootNode;
 import com.guillermomolina.lazylanguage.LLLanguage;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLTailCallException;
 import com.guillermomolina.lazylanguage.runtime.LLContext;
+import com.guillermomolina.lazylanguage.runtime.LLFunctionRegistry;
 import com.guillermomolina.lazylanguage.runtime.LLNull;
 
 /**
@@ -66,9 +73,17 @@ import com.guillermomolina.lazylanguage.runtime.LLNull;
 public final class LLEvalRootNode extends RootNode {
 
     private final Map<String, RootCallTarget> functions;
-    @CompilationFinal private boolean registered;
+    @CompilationFinal private LLFunctionRegistry registered;
+
+    /*
+     * Parsed sources are shared by all contexts of an engine, so the same node can be evaluated in
+     * several contexts. Each of them needs its own registration of the functions.
+     */
+    @CompilationFinal private boolean shared;
+    private Set<LLFunctionRegistry> sharedRegistrations;
 
     @Child private DirectCallNode mainCallNode;
+    @Child private IndirectCallNode tailCallNode = IndirectCallNode.create();
 
     public LLEvalRootNode(LLLanguage language, RootCallTarget rootFunction, Map<String, RootCallTarget> functions) {
         super(language);
@@ -99,11 +114,22 @@ public final class LLEvalRootNode extends RootNode {
     @Override
     public Object execute(VirtualFrame frame) {
         /* Lazy registrations of functions on first execution. */
-        if (!registered) {
+        LLFunctionRegistry registry = lookupContextReference(LLLanguage.class).get().getFunctionRegistry();
+        if (shared) {
+            registerShared(registry);
+        } else if (registry != registered) {
             /* Function registration is a slow-path operation that must not be compiled. */
             CompilerDirectives.transferToInterpreterAndInvalidate();
-            lookupContextReference(LLLanguage.class).get().getFunctionRegistry().register(functions);
-            registered = true;
+            if (registered == null) {
+                registry.register(functions);
+                registered = registry;
+            } else {
+                sharedRegistrations = Collections.newSetFromMap(new WeakHashMap<>());
+                sharedRegistrations.add(registered);
+                registered = null;
+                shared = true;
+                registerShared(registry);
+            }
         }
 
         if (mainCallNode == null) {
@@ -115,7 +141,14 @@ public final class LLEvalRootNode extends RootNode {
             for (int i = 0; i < arguments.length; i++) {
                 arguments[i] = LLContext.fromForeignValue(arguments[i]);
             }
-            return mainCallNode.call(arguments);
+            return LLTailCallException.resolve(mainCallNode.call(arguments), tailCallNode);
+        }
+    }
+
+    @TruffleBoundary
+    private synchronized void registerShared(LLFunctionRegistry registry) {
+        if (sharedRegistrations.add(registry)) {
+            registry.register(functions);
         }
     }
 }
@@ -78,6 +78,7 @@ public abstract class LLExpressionNode extends LLStatementNode {
 
     @Override
     public WrapperNode createWrapper(ProbeNode probe) {
+        LLRootNode.notifyInstrumented(this);
         return new LLExpressionNodeWrapper(this, probe);
     }
 
@@ -106,6 +107,10 @@ public abstract class LLExpressionNode extends LLStatementNode {
         return LLTypesGen.expectLong(executeGeneric(frame));
     }
 
+    public double executeDouble(VirtualFrame frame) throws UnexpectedResultException {
+        return LLTypesGen.expectDouble(executeGeneric(frame));
+    }
+
     public boolean executeBoolean(VirtualFrame frame) throws UnexpectedResultException {
         return LLTypesGen.expectBoolean(executeGeneric(frame));
     }
@@ -40,23 +40,55 @@
  */
 package com.guillermomolina.lazylanguage.nodes;
 
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.frame.FrameDescriptor;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import com.oracle.truffle.api.nodes.RootNode;
 import com.oracle.truffle.api.source.SourceSection;
+import com.guillermomolina.lazylanguage.LLException;
 import com.guillermomolina.lazylanguage.LLLanguage;
 import com.guillermomolina.lazylanguage.builtins.LLBuiltinNode;
+import com.guillermomolina.lazylanguage.nodes.bytecode.LLBytecodeNode;
 import com.guillermomolina.lazylanguage.nodes.controlflow.LLFunctionBodyNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLLazyFunctionBodyNode;
+import com.guillermomolina.lazylanguage.nodes.jvm.LLJvmCode;
+import com.guillermomolina.lazylanguage.runtime.LLFunctionRegistry;
 
 /**
  * The root of all Lazy execution trees. It is a Truffle requirement that the tree root extends the
  * class {@link RootNode}. This class is used for both builtin and user-defined functions. For
  * builtin functions, the {@link #bodyNode} is a subclass of {@link LLBuiltinNode}. For user-defined
  * functions, the {@link #bodyNode} is a {@link LLFunctionBodyNode}.
+ * <p>
+ * With the {@link LLLanguage#Bytecode} option, the body of a user-defined function is lowered to a
+ * {@link LLBytecodeNode} on its first execution, which then executes instead of the body. The body
+ * stays in the tree: once a tool instruments any node of the function, {@link #noToolAttached} is
+ * invalidated and the function executes its body again, so tools see the usual tags and events.
+ * <p>
+ * With the {@link LLLanguage#JvmCompilationThreshold} option, the interpreter compiles the body to
+ * a JVM class once the function was called that many times, so the types of its local variables
+ * are known. The {@link LLJvmCode} is executed instead of the bytecode or the body until it bails
+ * out, or a tool is attached. It is not used in code compiled by Truffle, which optimizes the tree
+ * itself.
+ * <p>
+ * Functions allow {@link #isCloningAllowed() cloning}, so Truffle can split a function that is
+ * polymorphic because its callers pass different types, and give each hot caller a copy that
+ * specializes to the types of that caller only.
  */
 @NodeInfo(language = "Lazy", description = "The root of all Lazy execution trees")
 public class LLRootNode extends RootNode {
+    /**
+     * The compilation is retried a few times, because the first one can fail only because the tree
+     * did not specialize the local variables yet, e.g., on the first call with a threshold of 1.
+     */
+    private static final int MAX_JVM_COMPILATION_RETRIES = 2;
+
     /** The function body that is executed, and specialized during execution. */
     @Child private LLExpressionNode bodyNode;
 
@@ -65,13 +97,36 @@ public class LLRootNode extends RootNode {
 
     private boolean isCloningAllowed;
 
-    private final SourceSection sourceSection;
+    /** The source section of the function, see {@link #relocate}. */
+    private volatile SourceSection sourceSection;
+
+    /** The start of the function in the source it was parsed from. */
+    private final int parsedCharIndex;
+
+    @Child private LLBytecodeNode bytecodeNode;
+
+    @CompilationFinal private boolean bytecodeLowered;
+
+    private final Assumption noToolAttached = Truffle.getRuntime().createAssumption("no instrumented nodes");
+
+    /** The number of calls until the body is compiled to a JVM class, or 0 if it never is. */
+    private int jvmCompilationCountdown;
+
+    /** The number of times the body may still be compiled after a compilation failed. */
+    private int jvmCompilationRetries = MAX_JVM_COMPILATION_RETRIES;
+
+    private volatile LLJvmCode jvmCode;
+
+    private final int jvmCompilationThreshold;
 
     public LLRootNode(LLLanguage language, FrameDescriptor frameDescriptor, LLExpressionNode bodyNode, SourceSection sourceSection, String name) {
         super(language, frameDescriptor);
         this.bodyNode = bodyNode;
         this.name = name;
         this.sourceSection = sourceSection;
+        this.parsedCharIndex = sourceSection != null && sourceSection.isAvailable() ? sourceSection.getCharIndex() : 0;
+        this.jvmCompilationThreshold = language.getJvmCompilationThreshold();
+        this.jvmCompilationCountdown = jvmCompilationThreshold;
     }
 
     @Override
@@ -79,12 +134,134 @@ public class LLRootNode extends RootNode {
         return sourceSection;
     }
 
+    /**
+     * Moves the function to {@code newSourceSection}, which has the same text as the current
+     * section, e.g., when a function is redefined with unchanged text in another source. The nodes
+     * keep the positions they were parsed at, and {@link #getSourceShift() shift} them.
+     */
+    public void relocate(SourceSection newSourceSection) {
+        assert newSourceSection.getCharacters().toString().equals(sourceSection.getCharacters().toString());
+        this.sourceSection = newSourceSection;
+    }
+
+    /** Returns the distance from the position the function was parsed at to its current one. */
+    public int getSourceShift() {
+        SourceSection section = sourceSection;
+        return section != null && section.isAvailable() ? section.getCharIndex() - parsedCharIndex : 0;
+    }
+
     @Override
     public Object execute(VirtualFrame frame) {
         assert lookupContextReference(LLLanguage.class).get() != null;
+        if (!bytecodeLowered) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            lowerToBytecode();
+        }
+        if (CompilerDirectives.inInterpreter() && (jvmCode != null || jvmCompilationCountdown > 0)) {
+            Object result = executeJvmCode(frame.getArguments());
+            if (result != null) {
+                return result;
+            }
+        }
+        if (bytecodeNode != null && noToolAttached.isValid()) {
+            return bytecodeNode.execute(frame);
+        }
         return bodyNode.executeGeneric(frame);
     }
 
+    private void lowerToBytecode() {
+        atomic(() -> {
+            if (bytecodeLowered) {
+                return;
+            }
+            if (!(bodyNode instanceof LLFunctionBodyNode)) {
+                /* Builtins have no bytecode; a body that is not parsed yet is lowered on a later call. */
+                bytecodeLowered = !(bodyNode instanceof LLLazyFunctionBodyNode);
+                return;
+            }
+            if (lookupLanguageReference(LLLanguage.class).get().isBytecode() && noToolAttached.isValid()) {
+                LLBytecodeNode newBytecodeNode = LLBytecodeNode.lower((LLFunctionBodyNode) bodyNode);
+                if (newBytecodeNode != null) {
+                    bytecodeNode = insert(newBytecodeNode);
+                }
+            }
+            bytecodeLowered = true;
+        });
+    }
+
+    /**
+     * Executes the {@link #jvmCode}, compiling it first on the call that reaches the threshold.
+     * Returns {@code null} if the call has to be executed by the tree instead. When the code bails
+     * out, or fails, it is discarded: only pure functions are compiled, so the tree can execute the
+     * call again and, if the failure is an error of the program, report it. An overflow only sends
+     * that one call to the tree.
+     */
+    @TruffleBoundary
+    private Object executeJvmCode(Object[] arguments) {
+        LLFunctionRegistry registry = lookupContextReference(LLLanguage.class).get().getFunctionRegistry();
+        LLJvmCode code = jvmCode;
+        if (code == null) {
+            if (!(bodyNode instanceof LLFunctionBodyNode)) {
+                /* Builtins are not compiled; a body that is not parsed yet is counted from its first call. */
+                jvmCompilationCountdown = bodyNode instanceof LLLazyFunctionBodyNode ? jvmCompilationCountdown : 0;
+                return null;
+            }
+            if (--jvmCompilationCountdown > 0 || !noToolAttached.isValid()) {
+                return null;
+            }
+            code = LLJvmCode.compile(this, noToolAttached, registry);
+            if (code == null) {
+                if (jvmCompilationRetries > 0) {
+                    /* Let the tree execute the function a while longer, and then try again. */
+                    jvmCompilationRetries--;
+                    jvmCompilationCountdown = jvmCompilationThreshold;
+                }
+                return null;
+            }
+            jvmCode = code;
+        }
+        if (code.getRegistry() != registry || !noToolAttached.isValid()) {
+            return null;
+        }
+        try {
+            return code.execute(arguments);
+        } catch (ArithmeticException e) {
+            /* An overflow of this call: the tree computes it on big numbers, the code stays. */
+            return null;
+        } catch (LLJvmCode.Bailout | LLException e) {
+            jvmCode = null;
+            return null;
+        }
+    }
+
+    /**
+     * Returns the JVM code of this function if it can execute a call in the context of
+     * {@code registry}, or {@code null}.
+     */
+    public LLJvmCode getJvmCode(LLFunctionRegistry registry) {
+        LLJvmCode code = jvmCode;
+        if (code != null && code.getRegistry() == registry && noToolAttached.isValid()) {
+            return code;
+        }
+        return null;
+    }
+
+    /**
+     * Called when a tool instruments {@code node}, which makes the function containing it execute
+     * its tree from the next call on.
+     */
+    static void notifyInstrumented(Node node) {
+        RootNode rootNode = node.getRootNode();
+        if (rootNode instanceof LLRootNode) {
+            ((LLRootNode) rootNode).noToolAttached.invalidate();
+        }
+    }
+
+    /** Returns the assumption that no tool instruments any node of this function. */
+    public Assumption getNoToolAttached() {
+        return noToolAttached;
+    }
+
     public LLExpressionNode getBodyNode() {
         return bodyNode;
     }
@@ -94,6 +271,14 @@ public class LLRootNode extends RootNode {
         return name;
     }
 
+    @Override
+    public Node copy() {
+        /* The copy lowers its own body, so the bytecode refers to the nodes of the copy. */
+        LLRootNode copy = (LLRootNode) super.copy();
+        copy.bytecodeLowered = false;
+        return copy;
+    }
+
     public void setCloningAllowed(boolean isCloningAllowed) {
         this.isCloningAllowed = isCloningAllowed;
     }
@@ -52,6 +52,8 @@ import com.oracle.truffle.api.nodes.NodeInfo;
 import com.oracle.truffle.api.nodes.RootNode;
 import com.oracle.truffle.api.source.Source;
 import com.oracle.truffle.api.source.SourceSection;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLReturnException;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLReturnNode;
 
 /**
  * The base class of all Truffle nodes for Lazy. All nodes (even expressions) can be used as
@@ -105,10 +107,18 @@ public abstract class LLStatementNode extends Node implements InstrumentableNode
                 return source.createUnavailableSection();
             }
         } else {
-            return source.createSection(sourceCharIndex, sourceLength);
+            return source.createSection(sourceCharIndex + getSourceShift(rootNode), sourceLength);
         }
     }
 
+    /**
+     * Returns how far the nodes of {@code rootNode} moved from the position they were parsed at,
+     * see {@link LLRootNode#relocate}.
+     */
+    public static int getSourceShift(RootNode rootNode) {
+        return rootNode instanceof LLRootNode ? ((LLRootNode) rootNode).getSourceShift() : 0;
+    }
+
     public final boolean hasSource() {
         return sourceCharIndex != NO_SOURCE;
     }
@@ -156,6 +166,7 @@ public abstract class LLStatementNode extends Node implements InstrumentableNode
     }
 
     public WrapperNode createWrapper(ProbeNode probe) {
+        LLRootNode.notifyInstrumented(this);
         return new LLStatementNodeWrapper(this, probe);
     }
 
@@ -164,6 +175,22 @@ public abstract class LLStatementNode extends Node implements InstrumentableNode
      */
     public abstract void executeVoid(VirtualFrame frame);
 
+    /**
+     * Execute this node as a statement of a function body, and return the value of the
+     * {@link LLReturnNode return statement} that ended the function, or {@code null} if execution
+     * continues with the next statement. Blocks and conditional statements pass the value of a
+     * return statement up without throwing an {@link LLReturnException}; other statements, e.g.
+     * loops, {@link #executeVoid execute as usual}.
+     * <p>
+     * The name does not start with {@code execute}, so the {@link LLStatementNodeWrapper wrapper}
+     * of an instrumented statement inherits this method, and executes the statement as usual too.
+     * Tools therefore see the same events as before.
+     */
+    public Object evaluateReturn(VirtualFrame frame) {
+        executeVoid(frame);
+        return null;
+    }
+
     /**
      * Marks this node as being a {@link StandardTags.StatementTag} for instrumentation purposes.
      */
@@ -40,8 +40,6 @@
  */
 package com.guillermomolina.lazylanguage.nodes;
 
-import java.math.BigInteger;
-
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.ImplicitCast;
 import com.oracle.truffle.api.dsl.TypeCast;
@@ -49,7 +47,9 @@ import com.oracle.truffle.api.dsl.TypeCheck;
 import com.oracle.truffle.api.dsl.TypeSystem;
 import com.guillermomolina.lazylanguage.LLLanguage;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 import com.guillermomolina.lazylanguage.runtime.LLNull;
+import com.guillermomolina.lazylanguage.runtime.LLRope;
 
 /**
  * The type system of Lazy, as explained in {@link LLLanguage}. Based on the {@link TypeSystem}
@@ -57,7 +57,7 @@ import com.guillermomolina.lazylanguage.runtime.LLNull;
  * conversion methods for some types. In this class, we only cover types where the automatically
  * generated ones would not be sufficient.
  */
-@TypeSystem({long.class, boolean.class})
+@TypeSystem({long.class, double.class, boolean.class})
 public abstract class LLTypes {
 
     /**
@@ -90,8 +90,33 @@ public abstract class LLTypes {
      * {@link LLBigNumber} arithmetic for values that fit into a 64-bit primitive value.
      */
     @ImplicitCast
-    @TruffleBoundary
     public static LLBigNumber castBigNumber(long value) {
-        return new LLBigNumber(BigInteger.valueOf(value));
+        return new LLBigNumber(value);
+    }
+
+    /**
+     * Informs the Truffle DLL that an integer number can be used in all specializations where a
+     * {@link LLDecimal} is expected, so that integers and decimals can be mixed. The
+     * specializations for {@code long} and {@link LLBigNumber} operands come first, so the
+     * conversion only happens when the other operand is a decimal.
+     */
+    @ImplicitCast
+    public static LLDecimal castDecimal(long value) {
+        return new LLDecimal(value, 0);
+    }
+
+    @ImplicitCast
+    public static LLDecimal castDecimal(LLBigNumber value) {
+        return LLDecimal.valueOf(value);
+    }
+
+    /**
+     * Informs the Truffle DLL that a {@link LLRope rope} can be used in all specializations where a
+     * {@link String} is expected. The rope is flattened, which copies its characters only once.
+     */
+    @ImplicitCast
+    @TruffleBoundary
+    public static String castString(LLRope value) {
+        return value.toString();
     }
 }
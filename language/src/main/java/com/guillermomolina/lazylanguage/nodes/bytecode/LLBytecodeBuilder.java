@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.nodes.bytecode;
+
+import static com.guillermomolina.lazylanguage.nodes.bytecode.LLBytecodeNode.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
+import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.LLStatementNode;
+import com.guillermomolina.lazylanguage.nodes.bytecode.LLBytecodeNode.CallSiteNode;
+import com.guillermomolina.lazylanguage.nodes.bytecode.LLBytecodeNode.OperationNode;
+import com.guillermomolina.lazylanguage.nodes.bytecode.LLBytecodeNode.StatementNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLBlockNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLBreakNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLContinueNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLDebuggerNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLFunctionBodyNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLIfNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLReturnNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLWhileNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLAddNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLAddNodeGen;
+import com.guillermomolina.lazylanguage.nodes.expression.LLBigIntegerLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLBooleanLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDecimalLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDivNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDivNodeGen;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDoubleLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLEqualNodeGen;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterOrEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterOrEqualNodeGen;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterThanNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterThanNodeGen;
+import com.guillermomolina.lazylanguage.nodes.expression.LLInvokeNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLessOrEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLessOrEqualNodeGen;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLessThanNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLessThanNodeGen;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLogicalAndNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLogicalNotNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLongLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLMulNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLMulNodeGen;
+import com.guillermomolina.lazylanguage.nodes.expression.LLParenExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLShortCircuitNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLStringLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLSubNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLSubNodeGen;
+import com.guillermomolina.lazylanguage.nodes.local.LLReadArgumentNode;
+import com.guillermomolina.lazylanguage.nodes.local.LLReadLocalVariableNode;
+import com.guillermomolina.lazylanguage.nodes.local.LLWriteLocalVariableNode;
+import com.guillermomolina.lazylanguage.nodes.util.LLUnboxNode;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
+import com.guillermomolina.lazylanguage.runtime.LLNull;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.instrumentation.StandardTags.StatementTag;
+import com.oracle.truffle.api.nodes.Node;
+
+/**
+ * Lowers the tree of a function body to the instructions of a {@link LLBytecodeNode}. Statements
+ * become instructions and jumps; {@code return}, {@code break} and {@code continue} are plain
+ * jumps instead of exceptions. Expressions without instructions of their own are executed by a
+ * copy of their tree, but a statement without instructions, such as a block that is not built yet,
+ * leaves the whole function to the tree interpreter.
+ */
+final class LLBytecodeBuilder {
+
+    /** Thrown when the body contains a statement that cannot be lowered. */
+    private static final class UnsupportedNodeException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedNodeException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** The instruction index of the condition of a loop and the jumps of its break statements. */
+    private static final class Loop {
+        final int start;
+        final List<Integer> breakJumps = new ArrayList<>();
+
+        Loop(int start) {
+            this.start = start;
+        }
+    }
+
+    private int[] code = new int[32];
+    private int codeSize;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+    private final List<FrameSlot> slots = new ArrayList<>();
+    private final List<OperationNode> operationNodes = new ArrayList<>();
+    private final List<LLExpressionNode> expressionNodes = new ArrayList<>();
+    private final List<CallSiteNode> callSites = new ArrayList<>();
+    private final List<StatementNode> statementNodes = new ArrayList<>();
+    private final List<Node> locations = new ArrayList<>();
+    private final Deque<Loop> loops = new ArrayDeque<>();
+    private int stackSize;
+    private int maxStackSize;
+
+    LLBytecodeNode build(LLFunctionBodyNode body) {
+        try {
+            statement(body.getBodyNode());
+        } catch (UnsupportedNodeException e) {
+            return null;
+        }
+        /* Falling off the end of the function returns the default null value. */
+        emitConstant(LLNull.SINGLETON);
+        emit(RETURN, -1);
+
+        return new LLBytecodeNode(Arrays.copyOf(code, codeSize), constants.toArray(), slots.toArray(new FrameSlot[0]), operationNodes.toArray(new OperationNode[0]),
+                        expressionNodes.toArray(new LLExpressionNode[0]), callSites.toArray(new CallSiteNode[0]),
+                        statementNodes.toArray(new LLStatementNode[0]), locations.toArray(new Node[0]), maxStackSize);
+    }
+
+    private void statement(LLStatementNode node) throws UnsupportedNodeException {
+        if (node.hasTag(StatementTag.class) && node.getSourceCharIndex() >= 0) {
+            statementNodes.add(new StatementNode(node));
+            emit(STATEMENT, 0, statementNodes.size() - 1);
+        }
+        if (node instanceof LLBlockNode) {
+            for (LLStatementNode statement : ((LLBlockNode) node).getStatements()) {
+                statement(statement);
+            }
+        } else if (node instanceof LLIfNode) {
+            LLIfNode ifNode = (LLIfNode) node;
+            expression(ifNode.getConditionNode());
+            int elseJump = emit(JUMP_FALSE, -1, -1, location(ifNode));
+            statement(ifNode.getThenPartNode());
+            if (ifNode.getElsePartNode() != null) {
+                int endJump = emit(JUMP, 0, -1);
+                patch(elseJump);
+                statement(ifNode.getElsePartNode());
+                patch(endJump);
+            } else {
+                patch(elseJump);
+            }
+        } else if (node instanceof LLWhileNode) {
+            LLWhileNode whileNode = (LLWhileNode) node;
+            Loop loop = new Loop(codeSize);
+            expression(whileNode.getConditionNode());
+            int exitJump = emit(JUMP_FALSE, -1, -1, location(whileNode));
+            loops.push(loop);
+            statement(whileNode.getBodyNode());
+            loops.pop();
+            emit(JUMP, 0, loop.start);
+            patch(exitJump);
+            for (int breakJump : loop.breakJumps) {
+                patch(breakJump);
+            }
+        } else if (node instanceof LLBreakNode) {
+            currentLoop().breakJumps.add(emit(JUMP, 0, -1));
+        } else if (node instanceof LLContinueNode) {
+            emit(JUMP, 0, currentLoop().start);
+        } else if (node instanceof LLReturnNode) {
+            LLExpressionNode valueNode = ((LLReturnNode) node).getValueNode();
+            if (valueNode != null) {
+                expression(valueNode);
+            } else {
+                emitConstant(LLNull.SINGLETON);
+            }
+            emit(RETURN, -1);
+        } else if (node instanceof LLDebuggerNode) {
+            /* A no-op unless a debugger is attached, which makes the function use its tree. */
+        } else if (node instanceof LLExpressionNode) {
+            expression((LLExpressionNode) node);
+            emit(POP, -1);
+        } else {
+            throw new UnsupportedNodeException();
+        }
+    }
+
+    private void expression(LLExpressionNode node) throws UnsupportedNodeException {
+        if (node instanceof LLLongLiteralNode || node instanceof LLDoubleLiteralNode || node instanceof LLDecimalLiteralNode || node instanceof LLBigIntegerLiteralNode || node instanceof LLStringLiteralNode || node instanceof LLBooleanLiteralNode) {
+            /* Literals do not use the frame. */
+            emitConstant(node.executeGeneric(null));
+        } else if (node instanceof LLParenExpressionNode) {
+            expression(((LLParenExpressionNode) node).getExpression());
+        } else if (node instanceof LLUnboxNode) {
+            expression(((LLUnboxNode) node).getValueNode());
+            emit(UNBOX, 0);
+        } else if (node instanceof LLReadArgumentNode) {
+            emit(LOAD_ARG, 1, ((LLReadArgumentNode) node).getIndex());
+        } else if (node instanceof LLReadLocalVariableNode) {
+            emit(LOAD_LOCAL, 1, slot(((LLReadLocalVariableNode) node).getSlot()));
+        } else if (node instanceof LLWriteLocalVariableNode) {
+            LLWriteLocalVariableNode writeNode = (LLWriteLocalVariableNode) node;
+            expression(writeNode.getValueNode());
+            emit(STORE_LOCAL, 0, slot(writeNode.getSlot()));
+        } else if (node instanceof LLBinaryNode && operationKind((LLBinaryNode) node) >= 0) {
+            LLBinaryNode binaryNode = (LLBinaryNode) node;
+            expression(binaryNode.getLeftNode());
+            expression(binaryNode.getRightNode());
+            emit(BINARY, -1, operationKind(binaryNode), operationNode(binaryNode));
+        } else if (node instanceof LLLogicalNotNode) {
+            expression(((LLLogicalNotNode) node).getValueNode());
+            emit(NOT, 0, location(node));
+        } else if (node instanceof LLShortCircuitNode) {
+            LLShortCircuitNode shortCircuitNode = (LLShortCircuitNode) node;
+            expression(shortCircuitNode.getLeftNode());
+            int endJump = emit(node instanceof LLLogicalAndNode ? AND : OR, -1, -1, location(node));
+            expression(shortCircuitNode.getRightNode());
+            emit(LOGICAL_RIGHT, 0, location(node));
+            patch(endJump);
+        } else if (node instanceof LLInvokeNode) {
+            LLInvokeNode invokeNode = (LLInvokeNode) node;
+            expression(invokeNode.getFunctionNode());
+            LLExpressionNode[] argumentNodes = invokeNode.getArgumentNodes();
+            for (LLExpressionNode argumentNode : argumentNodes) {
+                expression(argumentNode);
+            }
+            callSites.add(new CallSiteNode(invokeNode));
+            emit(INVOKE, -argumentNodes.length, argumentNodes.length, callSites.size() - 1);
+        } else {
+            expressionNodes.add((LLExpressionNode) node.deepCopy());
+            emit(EVAL, 1, expressionNodes.size() - 1);
+        }
+    }
+
+    private static int operationKind(LLBinaryNode node) {
+        if (node instanceof LLAddNode) {
+            return ADD;
+        } else if (node instanceof LLSubNode) {
+            return SUB;
+        } else if (node instanceof LLMulNode) {
+            return MUL;
+        } else if (node instanceof LLDivNode) {
+            return DIV;
+        } else if (node instanceof LLLessThanNode) {
+            return LESS_THAN;
+        } else if (node instanceof LLLessOrEqualNode) {
+            return LESS_OR_EQUAL;
+        } else if (node instanceof LLGreaterThanNode) {
+            return GREATER_THAN;
+        } else if (node instanceof LLGreaterOrEqualNode) {
+            return GREATER_OR_EQUAL;
+        } else if (node instanceof LLEqualNode) {
+            return EQUAL;
+        }
+        return -1;
+    }
+
+    /**
+     * Creates an operation node without children for the generic case of a binary instruction.
+     */
+    private int operationNode(LLBinaryNode node) {
+        LLBinaryNode operationNode;
+        switch (operationKind(node)) {
+            case ADD:
+                operationNode = LLAddNodeGen.create(null, null);
+                break;
+            case SUB:
+                operationNode = LLSubNodeGen.create(null, null);
+                break;
+            case MUL:
+                operationNode = LLMulNodeGen.create(null, null);
+                break;
+            case DIV:
+                operationNode = LLDivNodeGen.create(null, null);
+                break;
+            case LESS_THAN:
+                operationNode = LLLessThanNodeGen.create(null, null);
+                break;
+            case LESS_OR_EQUAL:
+                operationNode = LLLessOrEqualNodeGen.create(null, null);
+                break;
+            case GREATER_THAN:
+                operationNode = LLGreaterThanNodeGen.create(null, null);
+                break;
+            case GREATER_OR_EQUAL:
+                operationNode = LLGreaterOrEqualNodeGen.create(null, null);
+                break;
+            default:
+                operationNode = LLEqualNodeGen.create(null, null);
+                break;
+        }
+        operationNodes.add(new OperationNode(operationNode, node));
+        return operationNodes.size() - 1;
+    }
+
+    private Loop currentLoop() throws UnsupportedNodeException {
+        if (loops.isEmpty()) {
+            throw new UnsupportedNodeException();
+        }
+        return loops.peek();
+    }
+
+    private int slot(FrameSlot slot) {
+        int index = slots.indexOf(slot);
+        if (index < 0) {
+            slots.add(slot);
+            index = slots.size() - 1;
+        }
+        return index;
+    }
+
+    private int location(Node node) {
+        locations.add(node);
+        return locations.size() - 1;
+    }
+
+    /**
+     * Emits a constant, sharing the pool entry of an equal constant. Decimals are equal when their
+     * values are, e.g., {@code 1.1m} and {@code 1.10m}, but they keep their scale, so each decimal
+     * gets its own entry.
+     */
+    private void emitConstant(Object value) {
+        Integer index = value instanceof LLDecimal ? null : constantIndexes.get(value);
+        if (index == null) {
+            constants.add(value);
+            index = constants.size() - 1;
+            if (!(value instanceof LLDecimal)) {
+                constantIndexes.put(value, index);
+            }
+        }
+        emit(CONST, 1, index);
+    }
+
+    /**
+     * Appends an instruction and returns the index of its first operand, so a jump target can be
+     * patched later.
+     *
+     * @param stackEffect the change of the operand stack size when the instruction is executed
+     */
+    private int emit(int opcode, int stackEffect, int... operands) {
+        if (codeSize + 1 + operands.length > code.length) {
+            code = Arrays.copyOf(code, code.length * 2 + operands.length);
+        }
+        code[codeSize++] = opcode;
+        int operandIndex = codeSize;
+        for (int operand : operands) {
+            code[codeSize++] = operand;
+        }
+        stackSize += stackEffect;
+        maxStackSize = Math.max(maxStackSize, stackSize);
+        return operandIndex;
+    }
+
+    /** Makes the jump whose target operand is at {@code operandIndex} go to the next instruction. */
+    private void patch(int operandIndex) {
+        code[operandIndex] = codeSize;
+    }
+}
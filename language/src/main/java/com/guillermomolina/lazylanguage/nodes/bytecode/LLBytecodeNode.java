@@ -0,0 +1,577 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.nodes.bytecode;
+
+import com.guillermomolina.lazylanguage.LLException;
+import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
+import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.LLStatementNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLFunctionBodyNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLTailCallException;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLWhileNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDispatchNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLFunctionLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLInvokeNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLogicalAndNode;
+import com.guillermomolina.lazylanguage.nodes.util.LLUnboxNode;
+import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
+import com.guillermomolina.lazylanguage.runtime.LLFunction;
+import com.guillermomolina.lazylanguage.runtime.LLNull;
+import com.guillermomolina.lazylanguage.runtime.LLRope;
+import com.guillermomolina.lazylanguage.runtime.LLUndefinedNameException;
+import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.UnsupportedSpecializationException;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.FrameSlotKind;
+import com.oracle.truffle.api.frame.FrameUtil;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.interop.ArityException;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.UnsupportedMessageException;
+import com.oracle.truffle.api.interop.UnsupportedTypeException;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
+import com.oracle.truffle.api.nodes.ExplodeLoop.LoopExplosionKind;
+import com.oracle.truffle.api.nodes.LoopNode;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * Executes the body of a function lowered to a compact array of instructions, see
+ * {@link LLBytecodeBuilder}. Instructions take their operands from an operand stack and jump to
+ * other instructions by index, so control flow needs no exceptions. The dispatch loop is exploded
+ * with {@link LoopExplosionKind#MERGE_EXPLODE} during partial evaluation, so a compiled function has
+ * no dispatch left.
+ * <p>
+ * Arithmetic, comparisons and local variable accesses start uninitialized and rewrite themselves to
+ * a quickened opcode for {@code long} values on their first execution, or to a generic opcode if
+ * the values are of other types. A quickened opcode that meets other values, or whose result
+ * overflows, falls back to its generic opcode for good, like the {@code rewriteOn} specializations
+ * of the tree nodes. Generic arithmetic and comparisons are applied by operation nodes without
+ * children, so values of all types behave exactly as in the tree.
+ * <p>
+ * Expressions that have no instruction of their own, such as property accesses, are executed by a
+ * copy of their tree.
+ * <p>
+ * A function that is already executing its bytecode when a tool is attached cannot switch to its
+ * tree. So that tools can still suspend or cancel it, for example in an endless loop, every
+ * statement executes a {@link StatementNode} first, which tools instrument like the statement.
+ * <p>
+ * Backward jumps and self tail calls are counted in the interpreter and reported to the runtime
+ * when the function returns, like the iterations of a {@link LLWhileNode}, so that a function with
+ * hot loops is compiled as early as its tree would be. There is no on-stack replacement for the
+ * bytecode loops, so a loop that runs within a single long call is compiled for the next call.
+ */
+@NodeInfo(shortName = "bytecode", description = "The node executing the bytecode of a function")
+public final class LLBytecodeNode extends Node {
+
+    /* Instructions and their operands. */
+    static final int CONST = 0; // constant
+    static final int LOAD_ARG = 1; // argument index
+    static final int LOAD_LOCAL = 2; // slot
+    static final int LOAD_LOCAL_LONG = 3; // slot
+    static final int LOAD_LOCAL_GENERIC = 4; // slot
+    static final int STORE_LOCAL = 5; // slot
+    static final int STORE_LOCAL_LONG = 6; // slot
+    static final int STORE_LOCAL_GENERIC = 7; // slot
+    static final int POP = 8;
+    static final int UNBOX = 9;
+    static final int BINARY = 10; // operation kind, operation node
+    static final int BINARY_LONG = 11; // operation kind, operation node
+    static final int BINARY_GENERIC = 12; // operation kind, operation node
+    static final int NOT = 13; // location
+    static final int JUMP = 14; // target
+    static final int JUMP_FALSE = 15; // target, location
+    static final int AND = 16; // target, location
+    static final int OR = 17; // target, location
+    static final int LOGICAL_RIGHT = 18; // location
+    static final int INVOKE = 19; // argument count, call site
+    static final int EVAL = 20; // expression node
+    static final int RETURN = 21;
+    static final int STATEMENT = 22; // statement node
+
+    /* Operation kinds of BINARY instructions. */
+    static final int ADD = 0;
+    static final int SUB = 1;
+    static final int MUL = 2;
+    static final int DIV = 3;
+    static final int LESS_THAN = 4;
+    static final int LESS_OR_EQUAL = 5;
+    static final int GREATER_THAN = 6;
+    static final int GREATER_OR_EQUAL = 7;
+    static final int EQUAL = 8;
+
+    /** The arguments of all calls without arguments. */
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    /** The instructions, which are rewritten when they are quickened. */
+    @CompilationFinal(dimensions = 1) private final int[] code;
+    @CompilationFinal(dimensions = 1) private final Object[] constants;
+    @CompilationFinal(dimensions = 1) private final FrameSlot[] slots;
+    @Children private final OperationNode[] operationNodes;
+    @Children private final LLExpressionNode[] expressionNodes;
+    @Children private final CallSiteNode[] callSites;
+    @Children private final LLStatementNode[] statementNodes;
+    /** The nodes of the tree that errors are reported at. */
+    @CompilationFinal(dimensions = 1) private final Node[] locations;
+    private final int maxStackSize;
+
+    LLBytecodeNode(int[] code, Object[] constants, FrameSlot[] slots, OperationNode[] operationNodes, LLExpressionNode[] expressionNodes, CallSiteNode[] callSites,
+                    LLStatementNode[] statementNodes, Node[] locations, int maxStackSize) {
+        this.code = code;
+        this.constants = constants;
+        this.slots = slots;
+        this.operationNodes = operationNodes;
+        this.expressionNodes = expressionNodes;
+        this.callSites = callSites;
+        this.statementNodes = statementNodes;
+        this.locations = locations;
+        this.maxStackSize = maxStackSize;
+    }
+
+    /**
+     * Lowers the body of a function, or returns {@code null} if it contains statements that have no
+     * instructions.
+     */
+    public static LLBytecodeNode lower(LLFunctionBodyNode body) {
+        return new LLBytecodeBuilder().build(body);
+    }
+
+    @ExplodeLoop(kind = LoopExplosionKind.MERGE_EXPLODE)
+    public Object execute(VirtualFrame frame) {
+        CompilerAsserts.compilationConstant(maxStackSize);
+        Object[] stack = new Object[maxStackSize];
+        int sp = 0;
+        int bci = 0;
+        int loopCount = 0;
+        while (true) {
+            CompilerAsserts.partialEvaluationConstant(bci);
+            CompilerAsserts.partialEvaluationConstant(sp);
+            switch (code[bci]) {
+                case CONST:
+                    stack[sp++] = constants[code[bci + 1]];
+                    bci += 2;
+                    break;
+                case LOAD_ARG:
+                    stack[sp++] = readArgument(frame, code[bci + 1]);
+                    bci += 2;
+                    break;
+                case LOAD_LOCAL:
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    code[bci] = frame.isLong(slots[code[bci + 1]]) ? LOAD_LOCAL_LONG : LOAD_LOCAL_GENERIC;
+                    break;
+                case LOAD_LOCAL_LONG: {
+                    FrameSlot slot = slots[code[bci + 1]];
+                    if (frame.isLong(slot)) {
+                        stack[sp++] = FrameUtil.getLongSafe(frame, slot);
+                        bci += 2;
+                    } else {
+                        CompilerDirectives.transferToInterpreterAndInvalidate();
+                        code[bci] = LOAD_LOCAL_GENERIC;
+                    }
+                    break;
+                }
+                case LOAD_LOCAL_GENERIC:
+                    stack[sp++] = readLocal(frame, slots[code[bci + 1]]);
+                    bci += 2;
+                    break;
+                case STORE_LOCAL:
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    code[bci] = stack[sp - 1] instanceof Long && isLongOrIllegal(frame, slots[code[bci + 1]]) ? STORE_LOCAL_LONG : STORE_LOCAL_GENERIC;
+                    break;
+                case STORE_LOCAL_LONG: {
+                    FrameSlot slot = slots[code[bci + 1]];
+                    if (stack[sp - 1] instanceof Long && isLongOrIllegal(frame, slot)) {
+                        frame.getFrameDescriptor().setFrameSlotKind(slot, FrameSlotKind.Long);
+                        frame.setLong(slot, (long) stack[sp - 1]);
+                        bci += 2;
+                    } else {
+                        CompilerDirectives.transferToInterpreterAndInvalidate();
+                        code[bci] = STORE_LOCAL_GENERIC;
+                    }
+                    break;
+                }
+                case STORE_LOCAL_GENERIC:
+                    writeLocal(frame, slots[code[bci + 1]], stack[sp - 1]);
+                    bci += 2;
+                    break;
+                case POP:
+                    stack[--sp] = null;
+                    bci += 1;
+                    break;
+                case UNBOX:
+                    stack[sp - 1] = unbox(stack[sp - 1]);
+                    bci += 1;
+                    break;
+                case BINARY:
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    code[bci] = stack[sp - 2] instanceof Long && stack[sp - 1] instanceof Long ? BINARY_LONG : BINARY_GENERIC;
+                    break;
+                case BINARY_LONG: {
+                    Object left = stack[sp - 2];
+                    Object right = stack[sp - 1];
+                    if (left instanceof Long && right instanceof Long) {
+                        try {
+                            stack[sp - 2] = executeLong(code[bci + 1], (long) left, (long) right);
+                            stack[--sp] = null;
+                            bci += 3;
+                            break;
+                        } catch (ArithmeticException e) {
+                            /*
+                             * Overflow or division by zero: the generic operation handles this
+                             * execution, and the long fast path stays for the next ones.
+                             */
+                            stack[sp - 2] = operationNodes[code[bci + 2]].execute(left, right);
+                            stack[--sp] = null;
+                            bci += 3;
+                            break;
+                        }
+                    }
+                    CompilerDirectives.transferToInterpreterAndInvalidate();
+                    code[bci] = BINARY_GENERIC;
+                    break;
+                }
+                case BINARY_GENERIC:
+                    stack[sp - 2] = operationNodes[code[bci + 2]].execute(stack[sp - 2], stack[sp - 1]);
+                    stack[--sp] = null;
+                    bci += 3;
+                    break;
+                case NOT: {
+                    Object value = stack[sp - 1];
+                    if (!(value instanceof Boolean)) {
+                        throw LLException.typeError(locations[code[bci + 1]], value);
+                    }
+                    stack[sp - 1] = !(boolean) value;
+                    bci += 2;
+                    break;
+                }
+                case JUMP:
+                    if (CompilerDirectives.inInterpreter() && code[bci + 1] < bci) {
+                        loopCount++;
+                    }
+                    bci = code[bci + 1];
+                    break;
+                case JUMP_FALSE: {
+                    Object value = stack[--sp];
+                    stack[sp] = null;
+                    if (!(value instanceof Boolean)) {
+                        throw conditionError(locations[code[bci + 2]], value);
+                    }
+                    if ((boolean) value) {
+                        bci += 3;
+                    } else {
+                        bci = code[bci + 1];
+                    }
+                    break;
+                }
+                case AND:
+                case OR: {
+                    Object value = stack[sp - 1];
+                    if (!(value instanceof Boolean)) {
+                        throw LLException.typeError(locations[code[bci + 2]], value, null);
+                    }
+                    if ((boolean) value == (code[bci] == OR)) {
+                        /* The right operand is not evaluated, the left one is the result. */
+                        bci = code[bci + 1];
+                    } else {
+                        stack[--sp] = null;
+                        bci += 3;
+                    }
+                    break;
+                }
+                case LOGICAL_RIGHT: {
+                    Object value = stack[sp - 1];
+                    if (!(value instanceof Boolean)) {
+                        Node location = locations[code[bci + 1]];
+                        throw LLException.typeError(location, location instanceof LLLogicalAndNode, value);
+                    }
+                    bci += 2;
+                    break;
+                }
+                case INVOKE: {
+                    int argumentCount = code[bci + 1];
+                    Object[] arguments = popArguments(stack, sp, argumentCount);
+                    sp -= argumentCount;
+                    Object function = stack[sp - 1];
+                    CallSiteNode callSite = callSites[code[bci + 2]];
+                    if (function instanceof LLFunction && callSite.isTailCall()) {
+                        /* Same as LLFunctionBodyNode: a call of this function starts it over. */
+                        LLTailCallException call = new LLTailCallException((LLFunction) function, arguments);
+                        if (call.reuseFrame(frame, getRootNode())) {
+                            if (CompilerDirectives.inInterpreter()) {
+                                loopCount++;
+                            }
+                            sp = 0;
+                            bci = 0;
+                            break;
+                        }
+                        reportLoopCount(loopCount);
+                        return call;
+                    }
+                    stack[sp - 1] = callSite.execute(function, arguments);
+                    bci += 3;
+                    break;
+                }
+                case EVAL:
+                    stack[sp++] = expressionNodes[code[bci + 1]].executeGeneric(frame);
+                    bci += 2;
+                    break;
+                case RETURN:
+                    reportLoopCount(loopCount);
+                    return stack[sp - 1];
+                case STATEMENT:
+                    statementNodes[code[bci + 1]].executeVoid(frame);
+                    bci += 2;
+                    break;
+                default:
+                    throw CompilerDirectives.shouldNotReachHere("unknown opcode " + code[bci]);
+            }
+        }
+    }
+
+    /** Reports the backward jumps and self tail calls to the runtime, which compiles them like loop iterations. */
+    private void reportLoopCount(int loopCount) {
+        if (CompilerDirectives.inInterpreter() && loopCount > 0) {
+            LoopNode.reportLoopCount(this, loopCount);
+        }
+    }
+
+    /**
+     * Applies the operation of one binary expression to values of any type. The operation node has
+     * no source section, so tools do not instrument it, and errors are reported at this node, which
+     * has the source section of the expression.
+     */
+    static final class OperationNode extends Node {
+
+        @Child private LLBinaryNode operation;
+
+        private final LLBinaryNode binaryNode;
+
+        OperationNode(LLBinaryNode operation, LLBinaryNode binaryNode) {
+            this.operation = operation;
+            this.binaryNode = binaryNode;
+        }
+
+        Object execute(Object left, Object right) {
+            return operation.executeEvaluated(left, right);
+        }
+
+        @Override
+        public SourceSection getSourceSection() {
+            return binaryNode.getSourceSection();
+        }
+    }
+
+    /**
+     * Calls the functions of one invoke expression. Tools and stack traces find the source section
+     * of the invoke expression at it.
+     */
+    static final class CallSiteNode extends Node {
+
+        @Child private LLDispatchNode dispatchNode;
+
+        private final LLInvokeNode invokeNode;
+
+        CallSiteNode(LLInvokeNode invokeNode) {
+            this.dispatchNode = new LLDispatchNode(invokeNode.getFunctionNode() instanceof LLFunctionLiteralNode);
+            this.invokeNode = invokeNode;
+        }
+
+        boolean isTailCall() {
+            return invokeNode.isTailCallEnabled();
+        }
+
+        Object execute(Object function, Object[] arguments) {
+            try {
+                return dispatchNode.execute(function, arguments);
+            } catch (ArityException | UnsupportedTypeException | UnsupportedMessageException e) {
+                /* Execute was not successful. */
+                throw LLUndefinedNameException.undefinedFunction(invokeNode, function);
+            }
+        }
+
+        @Override
+        public SourceSection getSourceSection() {
+            return invokeNode.getSourceSection();
+        }
+    }
+
+    /**
+     * Does nothing, but has the source section and the statement tag of a statement, so tools get
+     * an event for each statement of a function that executes its bytecode.
+     */
+    static final class StatementNode extends LLStatementNode {
+
+        StatementNode(LLStatementNode statement) {
+            setSourceSection(statement.getSourceCharIndex(), statement.getSourceLength());
+            addStatementTag();
+        }
+
+        @Override
+        public void executeVoid(VirtualFrame frame) {
+        }
+    }
+
+    private static Object readArgument(VirtualFrame frame, int index) {
+        Object[] args = frame.getArguments();
+        return index < args.length ? args[index] : LLNull.SINGLETON;
+    }
+
+    /** Same as {@code LLReadLocalVariableNode}, for any kind of slot. */
+    private static Object readLocal(VirtualFrame frame, FrameSlot slot) {
+        if (frame.isLong(slot)) {
+            return FrameUtil.getLongSafe(frame, slot);
+        } else if (frame.isBoolean(slot)) {
+            return FrameUtil.getBooleanSafe(frame, slot);
+        } else if (frame.isDouble(slot)) {
+            return FrameUtil.getDoubleSafe(frame, slot);
+        } else if (!frame.isObject(slot)) {
+            CompilerDirectives.transferToInterpreter();
+            Object result = frame.getValue(slot);
+            frame.setObject(slot, result);
+            return result;
+        }
+        return FrameUtil.getObjectSafe(frame, slot);
+    }
+
+    /** Same as {@code LLWriteLocalVariableNode}, for any kind of value. */
+    private static void writeLocal(VirtualFrame frame, FrameSlot slot, Object value) {
+        FrameDescriptor frameDescriptor = frame.getFrameDescriptor();
+        if (value instanceof Long && isLongOrIllegal(frame, slot)) {
+            frameDescriptor.setFrameSlotKind(slot, FrameSlotKind.Long);
+            frame.setLong(slot, (long) value);
+        } else if (value instanceof Boolean && isBooleanOrIllegal(frame, slot)) {
+            frameDescriptor.setFrameSlotKind(slot, FrameSlotKind.Boolean);
+            frame.setBoolean(slot, (boolean) value);
+        } else if (value instanceof Double && isDoubleOrIllegal(frame, slot)) {
+            frameDescriptor.setFrameSlotKind(slot, FrameSlotKind.Double);
+            frame.setDouble(slot, (double) value);
+        } else {
+            frameDescriptor.setFrameSlotKind(slot, FrameSlotKind.Object);
+            frame.setObject(slot, value);
+        }
+    }
+
+    private static boolean isLongOrIllegal(VirtualFrame frame, FrameSlot slot) {
+        FrameSlotKind kind = frame.getFrameDescriptor().getFrameSlotKind(slot);
+        return kind == FrameSlotKind.Long || kind == FrameSlotKind.Illegal;
+    }
+
+    private static boolean isBooleanOrIllegal(VirtualFrame frame, FrameSlot slot) {
+        FrameSlotKind kind = frame.getFrameDescriptor().getFrameSlotKind(slot);
+        return kind == FrameSlotKind.Boolean || kind == FrameSlotKind.Illegal;
+    }
+
+    private static boolean isDoubleOrIllegal(VirtualFrame frame, FrameSlot slot) {
+        FrameSlotKind kind = frame.getFrameDescriptor().getFrameSlotKind(slot);
+        return kind == FrameSlotKind.Double || kind == FrameSlotKind.Illegal;
+    }
+
+    private static Object unbox(Object value) {
+        if (value instanceof Long || value instanceof Double || value instanceof Boolean || value instanceof String || value instanceof LLRope || value instanceof LLBigNumber || value instanceof LLDecimal || value instanceof LLFunction || value instanceof LLNull) {
+            return value;
+        }
+        return unboxForeign(value);
+    }
+
+    @TruffleBoundary
+    private static Object unboxForeign(Object value) {
+        return LLUnboxNode.fromForeign(value, InteropLibrary.getFactory().getUncached(value));
+    }
+
+    /** The {@code long} cases of the operations, which throw on overflow like the tree nodes. */
+    private static Object executeLong(int kind, long left, long right) throws ArithmeticException {
+        switch (kind) {
+            case ADD:
+                return Math.addExact(left, right);
+            case SUB:
+                return Math.subtractExact(left, right);
+            case MUL:
+                return Math.multiplyExact(left, right);
+            case DIV:
+                long result = left / right;
+                /* The only overflow, Long.MIN_VALUE / -1, gives a negative result. */
+                if ((left & right & result) < 0) {
+                    throw new ArithmeticException("long overflow");
+                }
+                return result;
+            case LESS_THAN:
+                return left < right;
+            case LESS_OR_EQUAL:
+                return left <= right;
+            case GREATER_THAN:
+                return left > right;
+            case GREATER_OR_EQUAL:
+                return left >= right;
+            case EQUAL:
+                return left == right;
+            default:
+                throw CompilerDirectives.shouldNotReachHere();
+        }
+    }
+
+    @ExplodeLoop
+    private static Object[] popArguments(Object[] stack, int sp, int argumentCount) {
+        if (argumentCount == 0) {
+            return NO_ARGUMENTS;
+        }
+        Object[] arguments = new Object[argumentCount];
+        for (int i = 0; i < argumentCount; i++) {
+            arguments[i] = stack[sp - argumentCount + i];
+            stack[sp - argumentCount + i] = null;
+        }
+        return arguments;
+    }
+
+    @TruffleBoundary
+    private static RuntimeException conditionError(Node location, Object value) {
+        if (location instanceof LLWhileNode) {
+            LLWhileNode whileNode = (LLWhileNode) location;
+            return new UnsupportedSpecializationException(whileNode, new Node[]{whileNode.getConditionNode()}, value);
+        }
+        return LLException.typeError(location, value);
+    }
+}
@@ -42,15 +42,21 @@ package com.guillermomolina.lazylanguage.nodes.controlflow;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
+import com.oracle.truffle.api.frame.FrameSlot;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.BlockNode;
 import com.oracle.truffle.api.nodes.BlockNode.ElementExecutor;
 import com.oracle.truffle.api.nodes.ControlFlowException;
 import com.oracle.truffle.api.nodes.ExplodeLoop;
+import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import com.guillermomolina.lazylanguage.nodes.LLStatementNode;
+import com.guillermomolina.lazylanguage.nodes.local.LLLexicalScope;
 
 /**
  * A statement node that just executes a list of other statements.
@@ -68,12 +74,23 @@ public final class LLBlockNode extends LLStatementNode implements BlockNode.Elem
      */
     @Child private BlockNode<LLStatementNode> block;
 
-    public LLBlockNode(LLStatementNode[] bodyNodes) {
+    /**
+     * The scope table of the block, computed by the parser: the local variables declared in this
+     * block and, for each of them, the index of the statement that declares it. Only tools use it,
+     * see {@link LLLexicalScope}.
+     */
+    private final FrameSlot[] locals;
+    private final int[] declaringStatements;
+
+    public LLBlockNode(LLStatementNode[] bodyNodes, FrameSlot[] locals, int[] declaringStatements) {
+        assert locals.length == declaringStatements.length;
         /*
          * Truffle block nodes cannot be empty, that is why we just set the entire block to null if
          * there are no elements. This is good practice as it safes memory.
          */
         this.block = bodyNodes.length > 0 ? BlockNode.create(bodyNodes, this) : null;
+        this.locals = locals;
+        this.declaringStatements = declaringStatements;
     }
 
     /**
@@ -88,6 +105,24 @@ public final class LLBlockNode extends LLStatementNode implements BlockNode.Elem
         }
     }
 
+    /**
+     * Execute the block statements until one of them returns from the function. The loop is
+     * unrolled like the one of the {@link BlockNode}, which cannot stop before the last statement.
+     */
+    @ExplodeLoop
+    @Override
+    public Object evaluateReturn(VirtualFrame frame) {
+        if (this.block != null) {
+            for (LLStatementNode statement : block.getElements()) {
+                Object result = statement.evaluateReturn(frame);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
     public List<LLStatementNode> getStatements() {
         if (block == null) {
             return Collections.emptyList();
@@ -95,6 +130,37 @@ public final class LLBlockNode extends LLStatementNode implements BlockNode.Elem
         return Collections.unmodifiableList(Arrays.asList(block.getElements()));
     }
 
+    /**
+     * Returns the local variables declared by the statements of this block that precede the one
+     * containing {@code node}, or all of them if {@code node} is not inside this block.
+     */
+    public Map<String, FrameSlot> getLocalsBefore(Node node) {
+        int statement = getStatementIndex(node);
+        Map<String, FrameSlot> slots = new LinkedHashMap<>(4);
+        for (int i = 0; i < locals.length; i++) {
+            if (declaringStatements[i] < statement) {
+                slots.put(Objects.toString(locals[i].getIdentifier()), locals[i]);
+            }
+        }
+        return slots;
+    }
+
+    private int getStatementIndex(Node node) {
+        if (block != null) {
+            for (Node n = node; n != null && n != this; n = n.getParent()) {
+                if (n.getParent() == block) {
+                    LLStatementNode[] statements = block.getElements();
+                    for (int i = 0; i < statements.length; i++) {
+                        if (statements[i] == n) {
+                            return i;
+                        }
+                    }
+                }
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
     /**
      * Truffle nodes don't have a fixed execute signature. The {@link ElementExecutor} interface
      * tells the framework how block element nodes should be executed. The executor allows to add a
@@ -40,12 +40,15 @@
  */
 package com.guillermomolina.lazylanguage.nodes.controlflow;
 
+import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.LoopNode;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import com.oracle.truffle.api.profiles.BranchProfile;
 import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
 import com.guillermomolina.lazylanguage.nodes.LLRootNode;
 import com.guillermomolina.lazylanguage.nodes.LLStatementNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLInvokeNode;
 import com.guillermomolina.lazylanguage.runtime.LLNull;
 
 /**
@@ -53,7 +56,13 @@ import com.guillermomolina.lazylanguage.runtime.LLNull;
  * user-defined functions. It handles the return value of a function: the {@link LLReturnNode return
  * statement} throws an {@link LLReturnException exception} with the return value. This node catches
  * the exception. If the method ends without an explicit {@code return}, return the
- * {@link LLNull#SINGLETON default null value}.
+ * {@link LLNull#SINGLETON default null value}. Return statements outside of loops need no exception:
+ * the body is {@link LLStatementNode#evaluateReturn evaluated}, which passes their value up.
+ * <p>
+ * A {@link LLInvokeNode call in tail position} throws an {@link LLTailCallException} instead of
+ * calling. A call of this function is executed again in the same frame, so self-recursion becomes a
+ * loop. A call of another function is returned, and the caller executes it, see
+ * {@link LLTailCallException#resolve}.
  */
 @NodeInfo(shortName = "body")
 public final class LLFunctionBodyNode extends LLExpressionNode {
@@ -66,36 +75,68 @@ public final class LLFunctionBodyNode extends LLExpressionNode {
      * {@link LLReturnNode explicit return statement}. This allows the compiler to generate better
      * code.
      */
+    private final BranchProfile returnTaken = BranchProfile.create();
     private final BranchProfile exceptionTaken = BranchProfile.create();
     private final BranchProfile nullTaken = BranchProfile.create();
+    private final BranchProfile tailCallTaken = BranchProfile.create();
 
     public LLFunctionBodyNode(LLStatementNode bodyNode) {
         this.bodyNode = bodyNode;
         addRootTag();
     }
 
+    public LLStatementNode getBodyNode() {
+        return bodyNode;
+    }
+
     @Override
     public Object executeGeneric(VirtualFrame frame) {
-        try {
-            /* Execute the function body. */
-            bodyNode.executeVoid(frame);
+        int tailCalls = 0;
+        while (true) {
+            try {
+                /* Execute the function body. */
+                Object result = bodyNode.evaluateReturn(frame);
+                if (result != null) {
+                    returnTaken.enter();
+                    reportTailCalls(tailCalls);
+                    return result;
+                }
+            } catch (LLReturnException ex) {
+                /*
+                 * In the interpreter, record profiling information that the function has an
+                 * explicit return.
+                 */
+                exceptionTaken.enter();
+                reportTailCalls(tailCalls);
+                /* The exception transports the actual return value. */
+                return ex.getResult();
+            } catch (LLTailCallException ex) {
+                tailCallTaken.enter();
+                if (ex.reuseFrame(frame, getRootNode())) {
+                    /* A call of this function: execute the body again with the new arguments. */
+                    tailCalls++;
+                    continue;
+                }
+                reportTailCalls(tailCalls);
+                /* The caller executes the call, after this function has left the stack. */
+                return ex;
+            }
 
-        } catch (LLReturnException ex) {
             /*
-             * In the interpreter, record profiling information that the function has an explicit
-             * return.
+             * In the interpreter, record profiling information that the function ends without an
+             * explicit return.
              */
-            exceptionTaken.enter();
-            /* The exception transports the actual return value. */
-            return ex.getResult();
+            nullTaken.enter();
+            reportTailCalls(tailCalls);
+            /* Return the default null value. */
+            return LLNull.SINGLETON;
         }
+    }
 
-        /*
-         * In the interpreter, record profiling information that the function ends without an
-         * explicit return.
-         */
-        nullTaken.enter();
-        /* Return the default null value. */
-        return LLNull.SINGLETON;
+    /** Reports the self tail calls to the runtime, which compiles them like loop iterations. */
+    private void reportTailCalls(int tailCalls) {
+        if (CompilerDirectives.inInterpreter() && tailCalls > 0) {
+            LoopNode.reportLoopCount(this, tailCalls);
+        }
     }
 }
@@ -80,6 +80,18 @@ public final class LLIfNode extends LLStatementNode {
         this.elsePartNode = elsePartNode;
     }
 
+    public LLExpressionNode getConditionNode() {
+        return conditionNode;
+    }
+
+    public LLStatementNode getThenPartNode() {
+        return thenPartNode;
+    }
+
+    public LLStatementNode getElsePartNode() {
+        return elsePartNode;
+    }
+
     @Override
     public void executeVoid(VirtualFrame frame) {
         /*
@@ -97,6 +109,16 @@ public final class LLIfNode extends LLStatementNode {
         }
     }
 
+    @Override
+    public Object evaluateReturn(VirtualFrame frame) {
+        if (condition.profile(evaluateCondition(frame))) {
+            return thenPartNode.evaluateReturn(frame);
+        } else if (elsePartNode != null) {
+            return elsePartNode.evaluateReturn(frame);
+        }
+        return null;
+    }
+
     private boolean evaluateCondition(VirtualFrame frame) {
         try {
             /*
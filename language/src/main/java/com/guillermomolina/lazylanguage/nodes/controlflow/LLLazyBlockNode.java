@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.nodes.controlflow;
+
+import com.guillermomolina.lazylanguage.nodes.LLStatementNode;
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.NodeInfo;
+
+/**
+ * Placeholder for a {@link LLBlockNode block} whose nodes have not been built yet. Only the source
+ * range of the block is known until it is first executed; then this node parses the block from
+ * the source again, builds it and replaces itself with it, so branches that never run take no room
+ * in the AST and do not keep the parse tree of the function alive. Errors such as a misplaced
+ * {@code break} in the block are therefore reported when it is first executed.
+ */
+@NodeInfo(shortName = "lazy block")
+public final class LLLazyBlockNode extends LLStatementNode {
+
+    /** Builds the block, allocating its local variables in the given descriptor. */
+    public interface BlockParser {
+        LLStatementNode parse(FrameDescriptor frameDescriptor);
+    }
+
+    private final BlockParser blockParser;
+    private LLStatementNode block;
+
+    public LLLazyBlockNode(BlockParser blockParser) {
+        this.blockParser = blockParser;
+    }
+
+    @Override
+    public void executeVoid(VirtualFrame frame) {
+        CompilerDirectives.transferToInterpreterAndInvalidate();
+        materialize().executeVoid(frame);
+    }
+
+    @Override
+    public Object evaluateReturn(VirtualFrame frame) {
+        CompilerDirectives.transferToInterpreterAndInvalidate();
+        return materialize().evaluateReturn(frame);
+    }
+
+    /**
+     * Builds the block and replaces this node with it. Threads that race to execute the block for
+     * the first time all use the block built by the first one.
+     */
+    public LLStatementNode materialize() {
+        return atomic(() -> {
+            if (block == null) {
+                LLStatementNode newBlock = blockParser.parse(getRootNode().getFrameDescriptor());
+                replace(newBlock, "block parsed");
+                notifyInserted(newBlock);
+                block = newBlock;
+            }
+            return block;
+        });
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.nodes.controlflow;
+
+import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.NodeInfo;
+
+/**
+ * Placeholder for the {@link LLFunctionBodyNode body} of a function that has not been parsed yet.
+ * When the source is loaded only the function headers are parsed; on the first invocation this node
+ * parses the body and replaces itself with it. Syntax errors in the body are therefore reported on
+ * the first call of the function.
+ */
+@NodeInfo(shortName = "lazy body")
+public final class LLLazyFunctionBodyNode extends LLExpressionNode {
+
+    /** Parses the body of a function, allocating its local variables in the given descriptor. */
+    public interface BodyParser {
+        LLFunctionBodyNode parse(FrameDescriptor frameDescriptor);
+    }
+
+    private final BodyParser bodyParser;
+    private LLFunctionBodyNode body;
+
+    public LLLazyFunctionBodyNode(BodyParser bodyParser) {
+        this.bodyParser = bodyParser;
+    }
+
+    @Override
+    public Object executeGeneric(VirtualFrame frame) {
+        CompilerDirectives.transferToInterpreterAndInvalidate();
+        return materialize().executeGeneric(frame);
+    }
+
+    /**
+     * Parses the body and replaces this node with it. Threads that race to execute the function
+     * for the first time all use the body created by the first one.
+     */
+    public LLFunctionBodyNode materialize() {
+        return atomic(() -> {
+            if (body == null) {
+                LLFunctionBodyNode newBody = bodyParser.parse(getRootNode().getFrameDescriptor());
+                replace(newBody, "function body parsed");
+                notifyInserted(newBody);
+                body = newBody;
+            }
+            return body;
+        });
+    }
+}
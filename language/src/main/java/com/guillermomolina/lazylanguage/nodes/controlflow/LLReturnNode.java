@@ -52,6 +52,10 @@ import com.guillermomolina.lazylanguage.runtime.LLNull;
  * method we are exiting. This is done by throwing an {@link LLReturnException exception} that is
  * caught by the {@link LLFunctionBodyNode#executeGeneric function body}. The exception transports
  * the return value.
+ * <p>
+ * Most return statements are not inside a loop, but at the end of the function or of the branches
+ * of an {@code if}. The function body {@link #evaluateReturn evaluates} such a statement, which then
+ * returns its value to the enclosing statements instead of throwing an exception.
  */
 @NodeInfo(shortName = "return", description = "The node implementing a return statement")
 public final class LLReturnNode extends LLStatementNode {
@@ -62,17 +66,24 @@ public final class LLReturnNode extends LLStatementNode {
         this.valueNode = valueNode;
     }
 
+    public LLExpressionNode getValueNode() {
+        return valueNode;
+    }
+
     @Override
     public void executeVoid(VirtualFrame frame) {
-        Object result;
+        throw new LLReturnException(evaluateReturn(frame));
+    }
+
+    @Override
+    public Object evaluateReturn(VirtualFrame frame) {
         if (valueNode != null) {
-            result = valueNode.executeGeneric(frame);
+            return valueNode.executeGeneric(frame);
         } else {
             /*
              * Return statement that was not followed by an expression, so return the Lazy null value.
              */
-            result = LLNull.SINGLETON;
+            return LLNull.SINGLETON;
         }
-        throw new LLReturnException(result);
     }
 }
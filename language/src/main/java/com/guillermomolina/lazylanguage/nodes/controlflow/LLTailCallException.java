@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.nodes.controlflow;
+
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.ControlFlowException;
+import com.oracle.truffle.api.nodes.IndirectCallNode;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLInvokeNode;
+import com.guillermomolina.lazylanguage.runtime.LLFunction;
+
+/**
+ * Exception thrown by a {@link LLInvokeNode call in tail position}, i.e., the value of a
+ * {@link LLReturnNode return statement}, instead of calling the function. The
+ * {@link LLFunctionBodyNode function body} catches it. It executes a call of its own function again
+ * in the same frame, and returns a call of another function as its result, which the caller runs
+ * with {@link #resolve}. Either way, the Java stack does not grow with the tail calls.
+ */
+public final class LLTailCallException extends ControlFlowException {
+
+    private static final long serialVersionUID = -1582394410468911254L;
+
+    private final LLFunction function;
+    private final Object[] arguments;
+
+    public LLTailCallException(LLFunction function, Object[] arguments) {
+        this.function = function;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Replaces the arguments of {@code frame} with the arguments of this call, if it calls the
+     * function of {@code rootNode} with as many arguments as the frame has. Returns {@code false}
+     * for any other call.
+     */
+    public boolean reuseFrame(VirtualFrame frame, RootNode rootNode) {
+        Object[] frameArguments = frame.getArguments();
+        if (function.getCallTarget() != rootNode.getCallTarget() || frameArguments.length != arguments.length) {
+            return false;
+        }
+        System.arraycopy(arguments, 0, frameArguments, 0, arguments.length);
+        return true;
+    }
+
+    /**
+     * Runs the calls that functions returned instead of executing them, and returns the result of
+     * the last one. Any other result is returned as it is.
+     */
+    public static Object resolve(Object result, IndirectCallNode callNode) {
+        Object current = result;
+        while (current instanceof LLTailCallException) {
+            LLTailCallException call = (LLTailCallException) current;
+            current = callNode.call(call.function.getCallTarget(), call.arguments);
+        }
+        return current;
+    }
+}
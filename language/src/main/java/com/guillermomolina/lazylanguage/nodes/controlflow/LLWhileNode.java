@@ -56,6 +56,14 @@ public final class LLWhileNode extends LLStatementNode {
         this.loopNode = Truffle.getRuntime().createLoopNode(new LLWhileRepeatingNode(conditionNode, bodyNode));
     }
 
+    public LLExpressionNode getConditionNode() {
+        return ((LLWhileRepeatingNode) loopNode.getRepeatingNode()).getConditionNode();
+    }
+
+    public LLStatementNode getBodyNode() {
+        return ((LLWhileRepeatingNode) loopNode.getRepeatingNode()).getBodyNode();
+    }
+
     @Override
     public void executeVoid(VirtualFrame frame) {
         loopNode.execute(frame);
@@ -81,6 +81,14 @@ public final class LLWhileRepeatingNode extends Node implements RepeatingNode {
         this.bodyNode = bodyNode;
     }
 
+    public LLExpressionNode getConditionNode() {
+        return conditionNode;
+    }
+
+    public LLStatementNode getBodyNode() {
+        return bodyNode;
+    }
+
     @Override
     public boolean executeRepeating(VirtualFrame frame) {
         if (!evaluateCondition(frame)) {
@@ -40,15 +40,21 @@
  */
 package com.guillermomolina.lazylanguage.nodes.expression;
 
+import java.math.BigInteger;
+
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.Fallback;
 import com.oracle.truffle.api.dsl.ImplicitCast;
+import com.oracle.truffle.api.dsl.ReportPolymorphism;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.profiles.BranchProfile;
 import com.guillermomolina.lazylanguage.LLException;
 import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
 import com.guillermomolina.lazylanguage.nodes.LLTypes;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
+import com.guillermomolina.lazylanguage.runtime.LLRope;
 
 /**
  * Lazy node that performs the "+" operation, which performs addition on arbitrary precision numbers,
@@ -59,14 +65,20 @@ import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
  * can handle all types is used only in cases where different types were encountered. The subclasses
  * are automatically generated by the Truffle DLL. In addition, a {@link LLAddNodeGen factory class}
  * is generated that provides, e.g., {@link LLAddNodeGen#create node creation}.
+ * <p>
+ * A helper function that adds, e.g., both numbers and strings {@link ReportPolymorphism reports}
+ * this, so Truffle can split it and give each caller a copy that adds its own types only.
  */
 @NodeInfo(shortName = "+")
+@ReportPolymorphism
 public abstract class LLAddNode extends LLBinaryNode {
 
+    private final BranchProfile overflowTaken = BranchProfile.create();
+
     /**
      * Specialization for primitive {@code long} values. This is the fast path of the
      * arbitrary-precision arithmetic. We need to check for overflows of the addition, and switch to
-     * the {@link #add(LLBigNumber, LLBigNumber) slow path}. Therefore, we use an
+     * the {@link #addOverflow overflow-tolerant specialization}. Therefore, we use an
      * {@link Math#addExact(long, long) addition method that throws an exception on overflow}. The
      * {@code rewriteOn} attribute on the {@link Specialization} annotation automatically triggers
      * the node rewriting on the exception.
@@ -84,21 +96,96 @@ public abstract class LLAddNode extends LLBinaryNode {
     }
 
     /**
-     * This is the slow path of the arbitrary-precision arithmetic. The {@link LLBigNumber} type of
-     * Java is doing everything we need.
+     * Replaces the {@link #add(long, long) long specialization} once an addition overflowed. Unlike
+     * the {@link #add(LLBigNumber, LLBigNumber) slow path}, it keeps adding {@code long} values
+     * without converting them to {@link LLBigNumber}, and only computes the rare overflowing
+     * additions on big numbers, so one overflow does not slow down all the following additions.
+     */
+    @Specialization
+    protected Object addOverflow(long left, long right) {
+        try {
+            return Math.addExact(left, right);
+        } catch (ArithmeticException e) {
+            overflowTaken.enter();
+            return LLBigNumber.add(left, right);
+        }
+    }
+
+    /**
+     * Adds a {@code long} to a {@link LLBigNumber} without widening the {@code long} first. When the
+     * addition is an accumulation into a local variable, i.e., {@code x = x + n}, the big number is
+     * updated in place instead of allocating a new one for every iteration.
+     */
+    @Specialization
+    protected Object add(LLBigNumber left, long right) {
+        if (isAccumulation()) {
+            return left.addAccumulate(right);
+        }
+        return left.add(right);
+    }
+
+    @Specialization
+    protected Object add(long left, LLBigNumber right) {
+        return right.add(left);
+    }
+
+    /**
+     * This is the slow path of the arbitrary-precision arithmetic. Numbers that fit into 128 bits
+     * are added as pairs of {@code long} values; only larger numbers use {@link BigInteger}.
      * <p>
      * This specialization is automatically selected by the Truffle DLL if both the left and right
-     * operand are {@link LLBigNumber} values. Because the type system defines an
-     * {@link ImplicitCast implicit conversion} from {@code long} to {@link LLBigNumber} in
-     * {@link LLTypes#castBigNumber(long)}, this specialization is also taken if the left or the
-     * right operand is a {@code long} value. Because the {@link #add(long, long) long}
-     * specialization} has the {@code rewriteOn} attribute, this specialization is also taken if
-     * both input values are {@code long} values but the primitive addition overflows.
+     * operand are {@link LLBigNumber} values. Mixed {@code long} and {@link LLBigNumber} operands
+     * are handled by the specializations above, which avoid the {@link ImplicitCast implicit
+     * conversion} in {@link LLTypes#castBigNumber(long)}.
+     * <p>
+     * The result is {@link LLBigNumber#normalize normalized}: if it fits into a {@code long}, it is
+     * returned as one, so that the following operations on it take the fast path again.
      */
     @Specialization
-    @TruffleBoundary
-    protected LLBigNumber add(LLBigNumber left, LLBigNumber right) {
-        return new LLBigNumber(left.getValue().add(right.getValue()));
+    protected Object add(LLBigNumber left, LLBigNumber right) {
+        return left.add(right);
+    }
+
+    /**
+     * Specialization for {@link LLDecimal fixed-point decimals}. The {@link ImplicitCast implicit
+     * conversions} in {@link LLTypes} also select it when one operand is an integer number. The
+     * addition is computed on the unscaled {@code long} values while they do not overflow.
+     */
+    @Specialization
+    protected LLDecimal add(LLDecimal left, LLDecimal right) {
+        return left.add(right);
+    }
+
+    /**
+     * Specializations for floating point numbers. A {@code double} operand makes the result a
+     * {@code double}, also when the other operand is an integer number. The mixed cases are
+     * separate specializations instead of an {@link ImplicitCast implicit conversion}, because
+     * such a conversion would also turn integer values written to a {@code double} local variable
+     * into floating point numbers.
+     */
+    @Specialization
+    protected double add(double left, double right) {
+        return left + right;
+    }
+
+    @Specialization
+    protected double add(long left, double right) {
+        return left + right;
+    }
+
+    @Specialization
+    protected double add(double left, long right) {
+        return left + right;
+    }
+
+    @Specialization
+    protected double add(LLBigNumber left, double right) {
+        return left.doubleValue() + right;
+    }
+
+    @Specialization
+    protected double add(double left, LLBigNumber right) {
+        return left + right.doubleValue();
     }
 
     /**
@@ -106,21 +193,28 @@ public abstract class LLAddNode extends LLBinaryNode {
      * works if either the left or the right operand is a String. The non-string operand is
      * converted then automatically converted to a String.
      * <p>
+     * The result is a {@link LLRope rope} that references the operands instead of copying them, so
+     * that appending to a string in a loop does not copy the string built so far every time.
+     * <p>
      * To implement these semantics, we tell the Truffle DLL to use a custom guard. The guard
      * function is defined in {@link #isString this class}, but could also be in any superclass.
      */
     @Specialization(guards = "isString(left, right)")
     @TruffleBoundary
-    protected String add(Object left, Object right) {
-        return left.toString() + right.toString();
+    protected Object add(Object left, Object right) {
+        return LLRope.concat(toStringOperand(left), toStringOperand(right));
+    }
+
+    private static Object toStringOperand(Object value) {
+        return value instanceof String || value instanceof LLRope ? value : value.toString();
     }
 
     /**
      * Guard for String concatenation: returns true if either the left or the right operand is a
-     * {@link String}.
+     * {@link String} or a {@link LLRope rope}.
      */
     protected boolean isString(Object a, Object b) {
-        return a instanceof String || b instanceof String;
+        return a instanceof String || b instanceof String || a instanceof LLRope || b instanceof LLRope;
     }
 
     @Fallback
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.nodes.expression;
+
+import java.util.Arrays;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.interop.ArityException;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.UnsupportedMessageException;
+import com.oracle.truffle.api.interop.UnsupportedTypeException;
+import com.oracle.truffle.api.nodes.DirectCallNode;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
+import com.oracle.truffle.api.nodes.IndirectCallNode;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import com.guillermomolina.lazylanguage.LLLanguage;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLTailCallException;
+import com.guillermomolina.lazylanguage.runtime.LLFunction;
+
+/**
+ * Calls the function of one {@link LLInvokeNode invoke expression}. A callee that is named in the
+ * source code, e.g., {@code foo} in {@code foo(x)}, is an {@link LLFunctionLiteralNode} that always
+ * evaluates to the same {@link LLFunction}. This node calls it with a {@link DirectCallNode} that
+ * it holds itself, guarded by the {@link LLFunction#getCallTargetStable() assumption} that the
+ * function is not redefined, and skips the interop dispatch. Parsed trees are shared by all
+ * contexts of an engine, so the function of another context is called directly too while it has the
+ * same call target.
+ * <p>
+ * Other callees, and a named callee that evaluates to a function with another call target, are
+ * called through the polymorphic inline cache of a dispatched {@link InteropLibrary}, see
+ * {@link LLFunction.Execute}.
+ * <p>
+ * The inline cache of {@link LLFunction.Execute} holds {@link LLFunction#INLINE_CACHE_SIZE} call
+ * targets; more targets are called indirectly. With the {@link LLLanguage#MegamorphicCacheSize}
+ * option, a call site that calls more targets switches to a {@link MegamorphicCache}, which counts
+ * the calls of each target, and calls the targets that reach the
+ * {@link LLLanguage#MegamorphicPromotionThreshold promotion threshold} directly again.
+ */
+@NodeInfo(shortName = "dispatch")
+public final class LLDispatchNode extends Node {
+
+    @Child private DirectCallNode callNode;
+    @Child private IndirectCallNode tailCallNode;
+    @Child private InteropLibrary library;
+
+    @CompilationFinal private LLFunction cachedFunction;
+    @CompilationFinal private Assumption callTargetStable;
+    @CompilationFinal private boolean generic;
+
+    /**
+     * The call targets of Lazy functions this node called in the interpreter, up to the size of
+     * the inline cache, or {@code null} if they are not tracked. Resolved on the first generic call.
+     */
+    private RootCallTarget[] calledTargets;
+    @CompilationFinal private boolean calledTargetsResolved;
+
+    /** The megamorphic state, once more targets than the inline cache holds were called. */
+    @CompilationFinal private MegamorphicCache megamorphicCache;
+    @Children private DirectCallNode[] promotedCallNodes = new DirectCallNode[0];
+    @Child private IndirectCallNode megamorphicCallNode;
+
+    public LLDispatchNode(boolean direct) {
+        this.generic = !direct;
+        if (generic) {
+            this.library = InteropLibrary.getFactory().createDispatched(3);
+        }
+    }
+
+    public Object execute(Object function, Object[] arguments) throws ArityException, UnsupportedTypeException, UnsupportedMessageException {
+        if (!generic) {
+            if (function == cachedFunction && callTargetStable.isValid()) {
+                /* The function may return a tail call that it did not execute itself. */
+                return LLTailCallException.resolve(callNode.call(arguments), tailCallNode);
+            }
+            if (cachedFunction != null && function instanceof LLFunction && ((LLFunction) function).getCallTarget() == callNode.getCallTarget()) {
+                /* The function of another context, which shares the parsed tree with the first one. */
+                return LLTailCallException.resolve(callNode.call(arguments), tailCallNode);
+            }
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            DirectCallNode newCallNode = atomic(() -> specialize(function));
+            if (newCallNode != null) {
+                return LLTailCallException.resolve(newCallNode.call(arguments), tailCallNode);
+            }
+        }
+        if (function instanceof LLFunction) {
+            if (megamorphicCache != null) {
+                return executeMegamorphic(((LLFunction) function).getCallTarget(), arguments);
+            }
+            if (CompilerDirectives.inInterpreter()) {
+                countTarget(((LLFunction) function).getCallTarget());
+            }
+        }
+        return library.execute(function, arguments);
+    }
+
+    /**
+     * Calls a promoted call target directly, and any other one indirectly. Calls of targets that
+     * are not promoted are counted, also in compiled code, so a target that becomes frequent later
+     * is promoted too.
+     */
+    @ExplodeLoop
+    private Object executeMegamorphic(RootCallTarget target, Object[] arguments) {
+        for (DirectCallNode promotedCallNode : promotedCallNodes) {
+            if (promotedCallNode.getCallTarget() == target) {
+                return LLTailCallException.resolve(promotedCallNode.call(arguments), megamorphicCallNode);
+            }
+        }
+        if (megamorphicCache.count(target) && promotedCallNodes.length < megamorphicCache.maxPromoted) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            atomic(() -> promote(target));
+        }
+        return LLTailCallException.resolve(megamorphicCallNode.call(target, arguments), megamorphicCallNode);
+    }
+
+    private void promote(RootCallTarget target) {
+        for (DirectCallNode promotedCallNode : promotedCallNodes) {
+            if (promotedCallNode.getCallTarget() == target) {
+                return;
+            }
+        }
+        if (promotedCallNodes.length < megamorphicCache.maxPromoted) {
+            DirectCallNode[] newCallNodes = Arrays.copyOf(promotedCallNodes, promotedCallNodes.length + 1);
+            newCallNodes[promotedCallNodes.length] = DirectCallNode.create(target);
+            promotedCallNodes = insert(newCallNodes);
+        }
+    }
+
+    /**
+     * Records a call target in the interpreter, and switches to the {@link MegamorphicCache} when
+     * the call targets no longer fit into the inline cache.
+     */
+    private void countTarget(RootCallTarget target) {
+        if (!calledTargetsResolved) {
+            LLLanguage language = lookupLanguageReference(LLLanguage.class).get();
+            if (language.getMegamorphicCacheSize() > 0) {
+                calledTargets = new RootCallTarget[LLFunction.INLINE_CACHE_SIZE];
+            }
+            calledTargetsResolved = true;
+        }
+        RootCallTarget[] targets = calledTargets;
+        if (targets == null) {
+            return;
+        }
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] == target) {
+                return;
+            } else if (targets[i] == null) {
+                targets[i] = target;
+                return;
+            }
+        }
+        CompilerDirectives.transferToInterpreterAndInvalidate();
+        atomic(() -> {
+            if (megamorphicCache == null) {
+                LLLanguage language = lookupLanguageReference(LLLanguage.class).get();
+                megamorphicCallNode = insert(IndirectCallNode.create());
+                megamorphicCache = new MegamorphicCache(language.getMegamorphicCacheSize(), language.getMegamorphicPromotionThreshold(), language.getMegamorphicDirectCalls());
+                calledTargets = null;
+            }
+        });
+    }
+
+    /** Returns the megamorphic cache of this call site, or {@code null} if it has none. */
+    public MegamorphicCache getMegamorphicCache() {
+        return megamorphicCache;
+    }
+
+    /** Returns the number of call targets this call site promoted to direct calls. */
+    public int getPromotedCount() {
+        return promotedCallNodes.length;
+    }
+
+    @Override
+    public Node copy() {
+        /* A copy counts the call targets of its own callers; it keeps the direct calls. */
+        LLDispatchNode copy = (LLDispatchNode) super.copy();
+        copy.calledTargets = null;
+        copy.calledTargetsResolved = false;
+        copy.megamorphicCache = null;
+        return copy;
+    }
+
+    /**
+     * Hash table of the call targets of a megamorphic call site, with the number of calls of each
+     * one. A target is looked up in the entry of its hash and in the next one; a new target
+     * replaces the one of these two entries that was called less often. The hits and misses of the
+     * table are counted too. The counts are profiling information: concurrent calls may lose
+     * updates.
+     */
+    public static final class MegamorphicCache {
+
+        private final RootCallTarget[] targets;
+        private final int[] calls;
+        private final int promotionThreshold;
+        final int maxPromoted;
+        private int hits;
+        private int misses;
+
+        MegamorphicCache(int size, int promotionThreshold, int maxPromoted) {
+            int capacity = size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+            this.targets = new RootCallTarget[capacity];
+            this.calls = new int[capacity];
+            this.promotionThreshold = promotionThreshold;
+            this.maxPromoted = maxPromoted;
+        }
+
+        /** Counts a call of {@code target}, and returns whether it reached the threshold. */
+        @TruffleBoundary
+        boolean count(RootCallTarget target) {
+            int mask = targets.length - 1;
+            int index = System.identityHashCode(target) & mask;
+            int next = (index + 1) & mask;
+            if (targets[index] == target) {
+                hits++;
+                return ++calls[index] >= promotionThreshold;
+            } else if (targets[next] == target) {
+                hits++;
+                return ++calls[next] >= promotionThreshold;
+            }
+            misses++;
+            if (calls[next] < calls[index]) {
+                index = next;
+            }
+            targets[index] = target;
+            calls[index] = 1;
+            return promotionThreshold <= 1;
+        }
+
+        public int getHits() {
+            return hits;
+        }
+
+        public int getMisses() {
+            return misses;
+        }
+    }
+
+    /**
+     * Caches {@code function} on the first call, or its current call target after it was
+     * redefined, and returns the call node for it. Returns {@code null} if this node has to call
+     * other functions, and becomes generic.
+     */
+    private DirectCallNode specialize(Object function) {
+        if (!generic && function instanceof LLFunction && (cachedFunction == null || function == cachedFunction)) {
+            LLFunction newFunction = (LLFunction) function;
+            /* Get the assumption first, so a redefinition in between invalidates it. */
+            callTargetStable = newFunction.getCallTargetStable();
+            callNode = insert(DirectCallNode.create(newFunction.getCallTarget()));
+            if (tailCallNode == null) {
+                tailCallNode = insert(IndirectCallNode.create());
+            }
+            cachedFunction = newFunction;
+            return callNode;
+        }
+        if (!generic) {
+            library = insert(InteropLibrary.getFactory().createDispatched(3));
+            generic = true;
+        }
+        return null;
+    }
+}
@@ -44,9 +44,12 @@ import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.Fallback;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.profiles.BranchProfile;
 import com.guillermomolina.lazylanguage.LLException;
 import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
+import com.guillermomolina.lazylanguage.nodes.LLTypes;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 
 /**
  * This class is similar to the extensively documented {@link LLAddNode}. Divisions by 0 throw the
@@ -56,6 +59,8 @@ import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
 @NodeInfo(shortName = "/")
 public abstract class LLDivNode extends LLBinaryNode {
 
+    private final BranchProfile overflowTaken = BranchProfile.create();
+
     @Specialization(rewriteOn = ArithmeticException.class)
     protected long div(long left, long right) throws ArithmeticException {
         long result = left / right;
@@ -68,10 +73,50 @@ public abstract class LLDivNode extends LLBinaryNode {
         return result;
     }
 
+    @Specialization
+    protected Object divOverflow(long left, long right) {
+        long result = left / right;
+        if ((left & right & result) < 0) {
+            overflowTaken.enter();
+            return div(LLTypes.castBigNumber(left), LLTypes.castBigNumber(right));
+        }
+        return result;
+    }
+
     @Specialization
     @TruffleBoundary
-    protected LLBigNumber div(LLBigNumber left, LLBigNumber right) {
-        return new LLBigNumber(left.getValue().divide(right.getValue()));
+    protected Object div(LLBigNumber left, LLBigNumber right) {
+        return LLBigNumber.normalize(left.getValue().divide(right.getValue()));
+    }
+
+    @Specialization
+    protected LLDecimal div(LLDecimal left, LLDecimal right) {
+        return left.divide(right);
+    }
+
+    @Specialization
+    protected double div(double left, double right) {
+        return left / right;
+    }
+
+    @Specialization
+    protected double div(long left, double right) {
+        return left / right;
+    }
+
+    @Specialization
+    protected double div(double left, long right) {
+        return left / right;
+    }
+
+    @Specialization
+    protected double div(LLBigNumber left, double right) {
+        return left.doubleValue() / right;
+    }
+
+    @Specialization
+    protected double div(double left, LLBigNumber right) {
+        return left / right.doubleValue();
     }
 
     @Fallback
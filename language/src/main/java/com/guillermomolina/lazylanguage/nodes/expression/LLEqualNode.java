@@ -43,15 +43,19 @@ package com.guillermomolina.lazylanguage.nodes.expression;
 import static com.oracle.truffle.api.CompilerDirectives.shouldNotReachHere;
 
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.ReportPolymorphism;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.interop.InteropLibrary;
 import com.oracle.truffle.api.interop.UnsupportedMessageException;
 import com.oracle.truffle.api.library.CachedLibrary;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
+import com.guillermomolina.lazylanguage.nodes.LLTypes;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 import com.guillermomolina.lazylanguage.runtime.LLFunction;
 import com.guillermomolina.lazylanguage.runtime.LLNull;
+import com.guillermomolina.lazylanguage.runtime.LLRope;
 
 /**
  * The {@code ==} operator of Lazy is defined on all types. Therefore, we need a
@@ -60,8 +64,12 @@ import com.guillermomolina.lazylanguage.runtime.LLNull;
  * <p>
  * Note that we do not need the analogous {@code !=} operator, because we can just
  * {@link LLLogicalNotNode negate} the {@code ==} operator.
+ * <p>
+ * The node {@link ReportPolymorphism reports} when it compares values of several types, so the
+ * function can be split per caller.
  */
 @NodeInfo(shortName = "==")
+@ReportPolymorphism
 public abstract class LLEqualNode extends LLBinaryNode {
 
     @Specialization
@@ -75,11 +83,35 @@ public abstract class LLEqualNode extends LLBinaryNode {
         return left.equals(right);
     }
 
+    @Specialization
+    protected boolean doDecimal(LLDecimal left, LLDecimal right) {
+        return left.compareTo(right) == 0;
+    }
+
+    @Specialization
+    protected boolean doDouble(double left, double right) {
+        return left == right;
+    }
+
+    @Specialization
+    protected boolean doLongDouble(long left, double right) {
+        return left == right;
+    }
+
+    @Specialization
+    protected boolean doDoubleLong(double left, long right) {
+        return left == right;
+    }
+
     @Specialization
     protected boolean doBoolean(boolean left, boolean right) {
         return left == right;
     }
 
+    /**
+     * Also compares {@link LLRope ropes}, which the {@link LLTypes#castString implicit conversion}
+     * flattens.
+     */
     @Specialization
     protected boolean doString(String left, String right) {
         return left.equals(right);
@@ -135,6 +167,8 @@ public abstract class LLEqualNode extends LLBinaryNode {
                 return true;
             } else if (leftInterop.fitsInLong(left) && rightInterop.fitsInLong(right)) {
                 return doLong(leftInterop.asLong(left), (rightInterop.asLong(right)));
+            } else if (leftInterop.fitsInDouble(left) && rightInterop.fitsInDouble(right)) {
+                return doDouble(leftInterop.asDouble(left), (rightInterop.asDouble(right)));
             } else if (left instanceof LLBigNumber && right instanceof LLBigNumber) {
                 return doBigNumber((LLBigNumber) left, (LLBigNumber) right);
             } else if (leftInterop.hasIdentity(left) && rightInterop.hasIdentity(right)) {
@@ -40,10 +40,14 @@
  */
 package com.guillermomolina.lazylanguage.nodes.expression;
 
+import java.util.Arrays;
+
 import com.oracle.truffle.api.CallTarget;
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import com.guillermomolina.lazylanguage.LLLanguage;
 import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
@@ -60,30 +64,80 @@ import com.guillermomolina.lazylanguage.runtime.LLFunctionRegistry;
 @NodeInfo(shortName = "func")
 public final class LLFunctionLiteralNode extends LLExpressionNode {
 
+    /** The number of contexts a literal caches the function of. */
+    private static final int CACHE_SIZE = 3;
+
     /** The name of the function. */
     private final String functionName;
 
     /**
-     * The resolved function. During parsing (in the constructor of this node), we do not have the
+     * The resolved functions. During parsing (in the constructor of this node), we do not have the
      * {@link LLContext} available yet, so the lookup can only be done at {@link #executeGeneric
      * first execution}. The {@link CompilationFinal} annotation ensures that the function can still
      * be constant folded during compilation.
+     * <p>
+     * Parsed trees are shared by all contexts of an engine, so a literal caches the function of
+     * each {@link LLFunctionRegistry registry} it was resolved in, up to {@link #CACHE_SIZE}
+     * contexts. Further contexts look the function up on every execution.
      */
-    @CompilationFinal private LLFunction cachedFunction;
+    @CompilationFinal(dimensions = 1) private CacheEntry[] cache = new CacheEntry[0];
+
+    private static final class CacheEntry {
+        final LLFunctionRegistry registry;
+        final LLFunction function;
+
+        CacheEntry(LLFunctionRegistry registry, LLFunction function) {
+            this.registry = registry;
+            this.function = function;
+        }
+    }
 
     public LLFunctionLiteralNode(String functionName) {
         this.functionName = functionName;
     }
 
+    public String getFunctionName() {
+        return functionName;
+    }
+
     @Override
+    @ExplodeLoop
     public LLFunction executeGeneric(VirtualFrame frame) {
-        if (cachedFunction == null) {
+        LLFunctionRegistry registry = lookupContextReference(LLLanguage.class).get().getFunctionRegistry();
+        CacheEntry[] entries = cache;
+        for (CacheEntry entry : entries) {
+            if (registry == entry.registry) {
+                return entry.function;
+            }
+        }
+        if (entries.length < CACHE_SIZE) {
             /* We are about to change a @CompilationFinal field. */
             CompilerDirectives.transferToInterpreterAndInvalidate();
-            /* First execution of the node: lookup the function in the function registry. */
-            cachedFunction = lookupContextReference(LLLanguage.class).get().getFunctionRegistry().lookup(functionName, true);
+            return atomic(() -> cacheFunction(registry));
+        }
+        /* The tree is executed by more contexts than the cache holds. */
+        return lookupFunction(registry);
+    }
+
+    /** Looks the function up in the function registry of a context, and caches it. */
+    private LLFunction cacheFunction(LLFunctionRegistry registry) {
+        for (CacheEntry entry : cache) {
+            if (registry == entry.registry) {
+                return entry.function;
+            }
         }
-        return cachedFunction;
+        LLFunction function = registry.lookup(functionName, true);
+        if (cache.length < CACHE_SIZE) {
+            CacheEntry[] newCache = Arrays.copyOf(cache, cache.length + 1);
+            newCache[cache.length] = new CacheEntry(registry, function);
+            cache = newCache;
+        }
+        return function;
+    }
+
+    @TruffleBoundary
+    private LLFunction lookupFunction(LLFunctionRegistry registry) {
+        return registry.lookup(functionName, true);
     }
 
 }
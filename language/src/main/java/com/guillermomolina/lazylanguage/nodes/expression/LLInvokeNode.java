@@ -40,7 +40,10 @@
  */
 package com.guillermomolina.lazylanguage.nodes.expression;
 
+import com.oracle.truffle.api.Assumption;
 import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.instrumentation.StandardTags;
 import com.oracle.truffle.api.instrumentation.Tag;
@@ -50,7 +53,13 @@ import com.oracle.truffle.api.interop.UnsupportedMessageException;
 import com.oracle.truffle.api.interop.UnsupportedTypeException;
 import com.oracle.truffle.api.nodes.ExplodeLoop;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.guillermomolina.lazylanguage.builtins.LLBuiltinNode;
 import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.LLRootNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLFunctionBodyNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLReturnNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLTailCallException;
 import com.guillermomolina.lazylanguage.runtime.LLFunction;
 import com.guillermomolina.lazylanguage.runtime.LLUndefinedNameException;
 
@@ -58,21 +67,93 @@ import com.guillermomolina.lazylanguage.runtime.LLUndefinedNameException;
  * The node for function invocation in Lazy. Since Lazy has first class functions, the {@link LLFunction
  * target function} can be computed by an arbitrary expression. This node is responsible for
  * evaluating this expression, as well as evaluating the {@link #argumentNodes arguments}. The
- * actual invocation is delegated to a {@link InteropLibrary} instance.
+ * actual invocation is delegated to a {@link LLDispatchNode}, which calls a function named in the
+ * source code directly, and other functions through an {@link InteropLibrary} instance.
+ * <p>
+ * A {@link #setTailCall() call in tail position} of a Lazy function does not call the function, but
+ * throws an {@link LLTailCallException} that the {@link LLFunctionBodyNode function body} executes
+ * after leaving the calling function.
+ * <p>
+ * In the interpreter, each call allocates its array of arguments, which becomes the arguments of
+ * the callee frame; calls without arguments share one empty array. Compiled code does not allocate
+ * the array once the call is inlined.
+ * <p>
+ * A call of a named {@link LLBuiltinNode builtin} that is {@link LLBuiltinNode#isInlinable()
+ * inlinable} executes an instance of the builtin that evaluates copies of the argument expressions,
+ * instead of calling the function of the builtin, see {@link #resolveBuiltin}.
  *
  * @see InteropLibrary#execute(Object, Object...)
  */
 @NodeInfo(shortName = "invoke")
 public final class LLInvokeNode extends LLExpressionNode {
 
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
     @Child private LLExpressionNode functionNode;
     @Children private final LLExpressionNode[] argumentNodes;
-    @Child private InteropLibrary library;
+    @Child private LLDispatchNode dispatchNode;
+
+    @CompilationFinal private boolean tailCall;
+    /**
+     * The assumption that no tool instruments the function, if this is a tail call. Resolved on the
+     * first execution, see {@link #isTailCallEnabled()}.
+     */
+    @CompilationFinal private Assumption noToolAttached;
+    @CompilationFinal private boolean noToolAttachedResolved;
+
+    /**
+     * The builtin this call executes in place, while the function of {@link #functionNode} is
+     * {@link #builtinFunction}, the function is not redefined and no tool instruments the caller or
+     * the builtin. Resolved on the first execution.
+     */
+    @Child private LLBuiltinNode builtinNode;
+    @CompilationFinal private LLFunction builtinFunction;
+    @CompilationFinal private Assumption builtinStable;
+    @CompilationFinal private Assumption callerNoToolAttached;
+    @CompilationFinal private Assumption builtinNoToolAttached;
+    @CompilationFinal private boolean builtinResolved;
 
     public LLInvokeNode(LLExpressionNode functionNode, LLExpressionNode[] argumentNodes) {
         this.functionNode = functionNode;
         this.argumentNodes = argumentNodes;
-        this.library = InteropLibrary.getFactory().createDispatched(3);
+        this.dispatchNode = new LLDispatchNode(functionNode instanceof LLFunctionLiteralNode);
+    }
+
+    public LLExpressionNode getFunctionNode() {
+        return functionNode;
+    }
+
+    public LLExpressionNode[] getArgumentNodes() {
+        return argumentNodes;
+    }
+
+    /**
+     * Marks this call as the value of a {@link LLReturnNode return statement}, whose function returns
+     * the result of the call as it is.
+     */
+    public void setTailCall() {
+        this.tailCall = true;
+    }
+
+    public boolean isTailCall() {
+        return tailCall;
+    }
+
+    /**
+     * Returns whether this call is executed as a tail call. Tools expect the calling function on
+     * the stack while the call executes, so an instrumented function calls as usual.
+     */
+    public boolean isTailCallEnabled() {
+        if (!tailCall) {
+            return false;
+        }
+        if (!noToolAttachedResolved) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            RootNode rootNode = getRootNode();
+            noToolAttached = rootNode instanceof LLRootNode ? ((LLRootNode) rootNode).getNoToolAttached() : null;
+            noToolAttachedResolved = true;
+        }
+        return noToolAttached != null && noToolAttached.isValid();
     }
 
     @ExplodeLoop
@@ -80,6 +161,19 @@ public final class LLInvokeNode extends LLExpressionNode {
     public Object executeGeneric(VirtualFrame frame) {
         Object function = functionNode.executeGeneric(frame);
 
+        if (!builtinResolved) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            resolveBuiltin(function);
+        }
+        if (builtinNode != null) {
+            if (function == builtinFunction && builtinStable.isValid() && callerNoToolAttached.isValid() && builtinNoToolAttached.isValid()) {
+                return builtinNode.executeGeneric(frame);
+            }
+            /* The builtin was redefined, or a tool needs its call: call it from now on. */
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            builtinNode = null;
+        }
+
         /*
          * The number of arguments is constant for one invoke node. During compilation, the loop is
          * unrolled and the execute methods of all arguments are inlined. This is triggered by the
@@ -88,19 +182,55 @@ public final class LLInvokeNode extends LLExpressionNode {
          */
         CompilerAsserts.compilationConstant(argumentNodes.length);
 
-        Object[] argumentValues = new Object[argumentNodes.length];
+        Object[] argumentValues = argumentNodes.length == 0 ? NO_ARGUMENTS : new Object[argumentNodes.length];
         for (int i = 0; i < argumentNodes.length; i++) {
             argumentValues[i] = argumentNodes[i].executeGeneric(frame);
         }
 
+        if (function instanceof LLFunction && isTailCallEnabled()) {
+            throw new LLTailCallException((LLFunction) function, argumentValues);
+        }
+
         try {
-            return library.execute(function, argumentValues);
+            return dispatchNode.execute(function, argumentValues);
         } catch (ArityException | UnsupportedTypeException | UnsupportedMessageException e) {
             /* Execute was not successful. */
             throw LLUndefinedNameException.undefinedFunction(this, function);
         }
     }
 
+    /**
+     * Creates the {@link #builtinNode} if the function named by this call is an inlinable builtin
+     * that takes as many arguments as the call passes. The builtin evaluates copies of the
+     * {@link #argumentNodes}, which this node no longer executes while the builtin is valid.
+     */
+    private void resolveBuiltin(Object function) {
+        builtinResolved = true;
+        if (!(functionNode instanceof LLFunctionLiteralNode) || !(function instanceof LLFunction)) {
+            return;
+        }
+        LLFunction candidate = (LLFunction) function;
+        /* Get the assumption first, so a redefinition in between invalidates it. */
+        Assumption stable = candidate.getCallTargetStable();
+        RootNode calleeRootNode = candidate.getCallTarget().getRootNode();
+        RootNode callerRootNode = getRootNode();
+        if (!(calleeRootNode instanceof LLRootNode) || !(callerRootNode instanceof LLRootNode) || !(((LLRootNode) calleeRootNode).getBodyNode() instanceof LLBuiltinNode)) {
+            return;
+        }
+        LLExpressionNode[] argumentCopies = new LLExpressionNode[argumentNodes.length];
+        for (int i = 0; i < argumentNodes.length; i++) {
+            argumentCopies[i] = (LLExpressionNode) argumentNodes[i].deepCopy();
+        }
+        LLBuiltinNode inline = ((LLBuiltinNode) ((LLRootNode) calleeRootNode).getBodyNode()).createInline(argumentCopies);
+        if (inline != null) {
+            builtinFunction = candidate;
+            builtinStable = stable;
+            callerNoToolAttached = ((LLRootNode) callerRootNode).getNoToolAttached();
+            builtinNoToolAttached = ((LLRootNode) calleeRootNode).getNoToolAttached();
+            builtinNode = insert(inline);
+        }
+    }
+
     @Override
     public boolean hasTag(Class<? extends Tag> tag) {
         if (tag == StandardTags.CallTag.class) {
@@ -108,5 +238,4 @@ public final class LLInvokeNode extends LLExpressionNode {
         }
         return super.hasTag(tag);
     }
-
 }
@@ -47,6 +47,7 @@ import com.oracle.truffle.api.nodes.NodeInfo;
 import com.guillermomolina.lazylanguage.LLException;
 import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 
 /**
  * This class is similar to the {@link LLLessThanNode}.
@@ -65,6 +66,36 @@ public abstract class LLLessOrEqualNode extends LLBinaryNode {
         return left.compareTo(right) <= 0;
     }
 
+    @Specialization
+    protected boolean lessOrEqual(LLDecimal left, LLDecimal right) {
+        return left.compareTo(right) <= 0;
+    }
+
+    @Specialization
+    protected boolean lessOrEqual(double left, double right) {
+        return left <= right;
+    }
+
+    @Specialization
+    protected boolean lessOrEqual(long left, double right) {
+        return left <= right;
+    }
+
+    @Specialization
+    protected boolean lessOrEqual(double left, long right) {
+        return left <= right;
+    }
+
+    @Specialization
+    protected boolean lessOrEqual(LLBigNumber left, double right) {
+        return left.doubleValue() <= right;
+    }
+
+    @Specialization
+    protected boolean lessOrEqual(double left, LLBigNumber right) {
+        return left <= right.doubleValue();
+    }
+
     @Fallback
     protected Object typeError(Object left, Object right) {
         throw LLException.typeError(this, left, right);
@@ -47,6 +47,7 @@ import com.oracle.truffle.api.nodes.NodeInfo;
 import com.guillermomolina.lazylanguage.LLException;
 import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 
 /**
  * This class is similar to the extensively documented {@link LLAddNode}. The only difference: the
@@ -66,6 +67,36 @@ public abstract class LLLessThanNode extends LLBinaryNode {
         return left.compareTo(right) < 0;
     }
 
+    @Specialization
+    protected boolean lessThan(LLDecimal left, LLDecimal right) {
+        return left.compareTo(right) < 0;
+    }
+
+    @Specialization
+    protected boolean lessThan(double left, double right) {
+        return left < right;
+    }
+
+    @Specialization
+    protected boolean lessThan(long left, double right) {
+        return left < right;
+    }
+
+    @Specialization
+    protected boolean lessThan(double left, long right) {
+        return left < right;
+    }
+
+    @Specialization
+    protected boolean lessThan(LLBigNumber left, double right) {
+        return left.doubleValue() < right;
+    }
+
+    @Specialization
+    protected boolean lessThan(double left, LLBigNumber right) {
+        return left < right.doubleValue();
+    }
+
     @Fallback
     protected Object typeError(Object left, Object right) {
         throw LLException.typeError(this, left, right);
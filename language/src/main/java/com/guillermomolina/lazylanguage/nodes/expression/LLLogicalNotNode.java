@@ -55,6 +55,8 @@ import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
 @NodeInfo(shortName = "!")
 public abstract class LLLogicalNotNode extends LLExpressionNode {
 
+    public abstract LLExpressionNode getValueNode();
+
     @Specialization
     protected boolean doBoolean(boolean value) {
         return !value;
@@ -40,13 +40,14 @@
  */
 package com.guillermomolina.lazylanguage.nodes.expression;
 
-import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.Fallback;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.profiles.BranchProfile;
 import com.guillermomolina.lazylanguage.LLException;
 import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 
 /**
  * This class is similar to the extensively documented {@link LLAddNode}.
@@ -54,15 +55,69 @@ import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
 @NodeInfo(shortName = "*")
 public abstract class LLMulNode extends LLBinaryNode {
 
+    private final BranchProfile overflowTaken = BranchProfile.create();
+
     @Specialization(rewriteOn = ArithmeticException.class)
     protected long mul(long left, long right) {
         return Math.multiplyExact(left, right);
     }
 
     @Specialization
-    @TruffleBoundary
-    protected LLBigNumber mul(LLBigNumber left, LLBigNumber right) {
-        return new LLBigNumber(left.getValue().multiply(right.getValue()));
+    protected Object mulOverflow(long left, long right) {
+        try {
+            return Math.multiplyExact(left, right);
+        } catch (ArithmeticException e) {
+            overflowTaken.enter();
+            return LLBigNumber.multiply(left, right);
+        }
+    }
+
+    @Specialization
+    protected Object mul(LLBigNumber left, long right) {
+        if (isAccumulation()) {
+            return left.multiplyAccumulate(right);
+        }
+        return left.multiply(right);
+    }
+
+    @Specialization
+    protected Object mul(long left, LLBigNumber right) {
+        return right.multiply(left);
+    }
+
+    @Specialization
+    protected Object mul(LLBigNumber left, LLBigNumber right) {
+        return left.multiply(right);
+    }
+
+    @Specialization
+    protected LLDecimal mul(LLDecimal left, LLDecimal right) {
+        return left.multiply(right);
+    }
+
+    @Specialization
+    protected double mul(double left, double right) {
+        return left * right;
+    }
+
+    @Specialization
+    protected double mul(long left, double right) {
+        return left * right;
+    }
+
+    @Specialization
+    protected double mul(double left, long right) {
+        return left * right;
+    }
+
+    @Specialization
+    protected double mul(LLBigNumber left, double right) {
+        return left.doubleValue() * right;
+    }
+
+    @Specialization
+    protected double mul(double left, LLBigNumber right) {
+        return left * right.doubleValue();
     }
 
     @Fallback
@@ -60,6 +60,10 @@ public class LLParenExpressionNode extends LLExpressionNode {
         this.expression = expression;
     }
 
+    public LLExpressionNode getExpression() {
+        return expression;
+    }
+
     @Override
     public Object executeGeneric(VirtualFrame frame) {
         return expression.executeGeneric(frame);
@@ -42,6 +42,7 @@ package com.guillermomolina.lazylanguage.nodes.expression;
 
 import com.oracle.truffle.api.dsl.Cached;
 import com.oracle.truffle.api.dsl.NodeChild;
+import com.oracle.truffle.api.dsl.ReportPolymorphism;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.interop.InteropLibrary;
 import com.oracle.truffle.api.interop.InvalidArrayIndexException;
@@ -60,8 +61,11 @@ import com.guillermomolina.lazylanguage.runtime.LLUndefinedNameException;
  * <li>evaluated the property name</li>
  * <li>reads the named property</li>
  * </ol>
+ * A node that reads objects of several shapes {@link ReportPolymorphism reports} it, so the function
+ * can be split per caller.
  */
 @NodeInfo(shortName = ".")
+@ReportPolymorphism
 @NodeChild("receiverNode")
 @NodeChild("nameNode")
 public abstract class LLReadPropertyNode extends LLExpressionNode {
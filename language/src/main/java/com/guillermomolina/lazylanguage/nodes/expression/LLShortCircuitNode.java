@@ -67,6 +67,14 @@ public abstract class LLShortCircuitNode extends LLExpressionNode {
         this.right = right;
     }
 
+    public LLExpressionNode getLeftNode() {
+        return left;
+    }
+
+    public LLExpressionNode getRightNode() {
+        return right;
+    }
+
     @Override
     public final Object executeGeneric(VirtualFrame frame) {
         return executeBoolean(frame);
@@ -40,13 +40,14 @@
  */
 package com.guillermomolina.lazylanguage.nodes.expression;
 
-import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.Fallback;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.profiles.BranchProfile;
 import com.guillermomolina.lazylanguage.LLException;
 import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 
 /**
  * This class is similar to the extensively documented {@link LLAddNode}.
@@ -54,15 +55,69 @@ import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
 @NodeInfo(shortName = "-")
 public abstract class LLSubNode extends LLBinaryNode {
 
+    private final BranchProfile overflowTaken = BranchProfile.create();
+
     @Specialization(rewriteOn = ArithmeticException.class)
     protected long sub(long left, long right) {
         return Math.subtractExact(left, right);
     }
 
     @Specialization
-    @TruffleBoundary
-    protected LLBigNumber sub(LLBigNumber left, LLBigNumber right) {
-        return new LLBigNumber(left.getValue().subtract(right.getValue()));
+    protected Object subOverflow(long left, long right) {
+        try {
+            return Math.subtractExact(left, right);
+        } catch (ArithmeticException e) {
+            overflowTaken.enter();
+            return LLBigNumber.subtract(left, right);
+        }
+    }
+
+    @Specialization
+    protected Object sub(LLBigNumber left, long right) {
+        if (isAccumulation()) {
+            return left.subtractAccumulate(right);
+        }
+        return left.subtract(right);
+    }
+
+    @Specialization
+    protected Object sub(long left, LLBigNumber right) {
+        return LLBigNumber.subtract(left, right);
+    }
+
+    @Specialization
+    protected Object sub(LLBigNumber left, LLBigNumber right) {
+        return left.subtract(right);
+    }
+
+    @Specialization
+    protected LLDecimal sub(LLDecimal left, LLDecimal right) {
+        return left.subtract(right);
+    }
+
+    @Specialization
+    protected double sub(double left, double right) {
+        return left - right;
+    }
+
+    @Specialization
+    protected double sub(long left, double right) {
+        return left - right;
+    }
+
+    @Specialization
+    protected double sub(double left, long right) {
+        return left - right;
+    }
+
+    @Specialization
+    protected double sub(LLBigNumber left, double right) {
+        return left.doubleValue() - right;
+    }
+
+    @Specialization
+    protected double sub(double left, LLBigNumber right) {
+        return left - right.doubleValue();
     }
 
     @Fallback
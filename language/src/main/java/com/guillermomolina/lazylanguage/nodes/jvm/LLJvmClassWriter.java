@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.nodes.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the class files of {@link LLJvmCompiler}: one public final class with public methods and
+ * no fields. The class file version is 49, whose verifier infers the types of the stack and locals
+ * itself, so no stack map frames need to be computed.
+ */
+final class LLJvmClassWriter {
+
+    private static final int VERSION = 49;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /* Opcodes, named as in the JVM specification. */
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int LCONST_0 = 0x09;
+    static final int LCONST_1 = 0x0a;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int LLOAD = 0x16;
+    static final int ALOAD = 0x19;
+    static final int ISTORE = 0x36;
+    static final int LSTORE = 0x37;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5c;
+    static final int IXOR = 0x82;
+    static final int LCMP = 0x94;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ANEWARRAY = 0xbd;
+
+    /** A position in the code of a method, which jumps refer to before it is placed. */
+    static final class Label {
+        private int position = -1;
+        private int stackSize = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    /** The code of one method. It tracks the operand stack size to compute the max_stack value. */
+    final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int stackSize;
+        private int maxStackSize;
+        private int maxLocals;
+        private boolean reachable = true;
+
+        private void op(int opcode, int stackEffect) {
+            bytes.write(opcode);
+            stackSize += stackEffect;
+            maxStackSize = Math.max(maxStackSize, stackSize);
+        }
+
+        private void u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+        }
+
+        /** An instruction without operands. */
+        void emit(int opcode, int stackEffect) {
+            op(opcode, stackEffect);
+            if (opcode == ARETURN || opcode == RETURN) {
+                reachable = false;
+            }
+        }
+
+        void loadInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH, 1);
+                bytes.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH, 1);
+                u2(value);
+            } else {
+                op(LDC_W, 1);
+                u2(constant(CONSTANT_INTEGER, value));
+            }
+        }
+
+        void loadLong(long value) {
+            if (value == 0 || value == 1) {
+                op(value == 0 ? LCONST_0 : LCONST_1, 2);
+            } else {
+                op(LDC2_W, 2);
+                u2(constant(CONSTANT_LONG, value));
+            }
+        }
+
+        /** {@code ILOAD}, {@code LLOAD}, {@code ALOAD}, {@code ISTORE} or {@code LSTORE}. */
+        void local(int opcode, int index) {
+            int size = opcode == LLOAD || opcode == LSTORE ? 2 : 1;
+            op(opcode, opcode == ISTORE || opcode == LSTORE ? -size : size);
+            bytes.write(index);
+            maxLocals = Math.max(maxLocals, index + size);
+        }
+
+        /** {@code GETSTATIC}, {@code ANEWARRAY} or an invoke instruction. */
+        void member(int opcode, int stackEffect, int constantIndex) {
+            op(opcode, stackEffect);
+            u2(constantIndex);
+        }
+
+        /** A conditional jump, or {@code GOTO}. */
+        void jump(int opcode, Label label) {
+            op(opcode, opcode == GOTO ? 0 : -1);
+            label.jumps.add(bytes.size() - 1);
+            label.stackSize = stackSize;
+            u2(0);
+            if (opcode == GOTO) {
+                reachable = false;
+            }
+        }
+
+        void place(Label label) {
+            if (!reachable) {
+                /* Only reached by jumps: the stack is as it was at them. */
+                stackSize = label.stackSize;
+                reachable = true;
+            }
+            label.position = bytes.size();
+            labels.add(label);
+        }
+
+        boolean isReachable() {
+            return reachable;
+        }
+
+        private byte[] toByteArray() {
+            byte[] result = bytes.toByteArray();
+            for (Label label : labels) {
+                for (int jump : label.jumps) {
+                    int offset = label.position - jump;
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new IllegalStateException("method too large");
+                    }
+                    result[jump + 1] = (byte) (offset >> 8);
+                    result[jump + 2] = (byte) offset;
+                }
+            }
+            return result;
+        }
+    }
+
+    private final String name;
+    private final String superName;
+    private final List<Object[]> constants = new ArrayList<>();
+    private final Map<List<Object>, Integer> constantIndexes = new HashMap<>();
+    private int constantCount = 1;
+    private final List<Object[]> methods = new ArrayList<>();
+
+    LLJvmClassWriter(String name, String superName) {
+        this.name = name;
+        this.superName = superName;
+    }
+
+    Code method(String methodName, String descriptor, int parameterSlots) {
+        Code code = new Code();
+        code.maxLocals = parameterSlots;
+        methods.add(new Object[]{methodName, descriptor, code});
+        return code;
+    }
+
+    int classConstant(String internalName) {
+        return constant(CONSTANT_CLASS, utf8(internalName));
+    }
+
+    int fieldConstant(String owner, String fieldName, String descriptor) {
+        return constant(CONSTANT_FIELDREF, classConstant(owner), nameAndType(fieldName, descriptor));
+    }
+
+    int methodConstant(String owner, String methodName, String descriptor) {
+        return constant(CONSTANT_METHODREF, classConstant(owner), nameAndType(methodName, descriptor));
+    }
+
+    private int nameAndType(String memberName, String descriptor) {
+        return constant(CONSTANT_NAME_AND_TYPE, utf8(memberName), utf8(descriptor));
+    }
+
+    private int utf8(String value) {
+        return constant(CONSTANT_UTF8, value);
+    }
+
+    private int constant(int tag, Object... values) {
+        List<Object> key = new ArrayList<>(values.length + 1);
+        key.add(tag);
+        key.addAll(Arrays.asList(values));
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            index = constantCount;
+            /* Long constants take two entries of the pool. */
+            constantCount += tag == CONSTANT_LONG ? 2 : 1;
+            constants.add(key.toArray());
+            constantIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    byte[] toByteArray() {
+        try {
+            int thisIndex = classConstant(name);
+            int superIndex = classConstant(superName);
+            int codeIndex = utf8("Code");
+            List<int[]> methodIndexes = new ArrayList<>();
+            for (Object[] method : methods) {
+                methodIndexes.add(new int[]{utf8((String) method[0]), utf8((String) method[1])});
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(constantCount);
+            for (Object[] constant : constants) {
+                int tag = (int) constant[0];
+                out.writeByte(tag);
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        out.writeUTF((String) constant[1]);
+                        break;
+                    case CONSTANT_INTEGER:
+                        out.writeInt((int) constant[1]);
+                        break;
+                    case CONSTANT_LONG:
+                        out.writeLong((long) constant[1]);
+                        break;
+                    case CONSTANT_CLASS:
+                        out.writeShort((int) constant[1]);
+                        break;
+                    default:
+                        out.writeShort((int) constant[1]);
+                        out.writeShort((int) constant[2]);
+                        break;
+                }
+            }
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (int i = 0; i < methods.size(); i++) {
+                Code code = (Code) methods.get(i)[2];
+                byte[] codeBytes = code.toByteArray();
+                out.writeShort(ACC_PUBLIC);
+                out.writeShort(methodIndexes.get(i)[0]);
+                out.writeShort(methodIndexes.get(i)[1]);
+                out.writeShort(1);
+                out.writeShort(codeIndex);
+                out.writeInt(12 + codeBytes.length);
+                out.writeShort(code.maxStackSize);
+                out.writeShort(code.maxLocals);
+                out.writeInt(codeBytes.length);
+                out.write(codeBytes);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            }
+            out.writeShort(0); // attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.nodes.jvm;
+
+import com.guillermomolina.lazylanguage.nodes.LLRootNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLTailCallException;
+import com.guillermomolina.lazylanguage.runtime.LLFunction;
+import com.guillermomolina.lazylanguage.runtime.LLFunctionRegistry;
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.nodes.ControlFlowException;
+import com.oracle.truffle.api.nodes.IndirectCallNode;
+import com.oracle.truffle.api.nodes.RootNode;
+
+/**
+ * The code of a Lazy function compiled to a JVM class by {@link LLJvmCompiler}. The generated class
+ * extends this one and implements {@link #execute}; the methods of this class are the runtime
+ * support it calls.
+ * <p>
+ * Only pure functions are compiled, and the compiled code only computes with {@code long} and
+ * {@code boolean} values. Whenever the code meets anything else, such as an argument that is not a
+ * {@code long}, a callee that is no longer pure, or a tool that is attached while it runs, it throws
+ * a {@link Bailout}. Nothing the compiled code did before is observable, so the {@link LLRootNode}
+ * can then execute the call again with the tree interpreter.
+ */
+public abstract class LLJvmCode {
+
+    /** Thrown by the compiled code when the call has to be executed by the tree interpreter. */
+    public static final class Bailout extends ControlFlowException {
+        private static final long serialVersionUID = 1L;
+
+        static final Bailout INSTANCE = new Bailout();
+
+        private Bailout() {
+        }
+    }
+
+    private final Assumption noToolAttached;
+
+    /** The functions called by the compiled code, indexed by the operand of {@link #call}. */
+    private final LLFunction[] functions;
+
+    /** The registry the {@link #functions} were resolved in. */
+    private final LLFunctionRegistry registry;
+
+    protected LLJvmCode(Assumption noToolAttached, LLFunction[] functions, LLFunctionRegistry registry) {
+        this.noToolAttached = noToolAttached;
+        this.functions = functions;
+        this.registry = registry;
+    }
+
+    /**
+     * Compiles the body of {@code rootNode}, or returns {@code null} if the body uses anything the
+     * compiler does not support. The types of the local variables are the ones observed by the tree
+     * interpreter so far.
+     *
+     * @param noToolAttached the assumption that no tool instruments the function
+     * @param registry the registry that resolves the functions called by the body
+     */
+    public static LLJvmCode compile(LLRootNode rootNode, Assumption noToolAttached, LLFunctionRegistry registry) {
+        return new LLJvmCompiler(rootNode, registry).compile(noToolAttached);
+    }
+
+    public final LLFunctionRegistry getRegistry() {
+        return registry;
+    }
+
+    /** Executes the function with the given arguments. */
+    public abstract Object execute(Object[] arguments);
+
+    /** Called at the start of every loop iteration, so running code notices attached tools. */
+    public final void poll() {
+        if (!noToolAttached.isValid()) {
+            throw Bailout.INSTANCE;
+        }
+    }
+
+    public static long longArgument(Object[] arguments, int index) {
+        if (index < arguments.length && arguments[index] instanceof Long) {
+            return (Long) arguments[index];
+        }
+        throw Bailout.INSTANCE;
+    }
+
+    public static boolean booleanArgument(Object[] arguments, int index) {
+        if (index < arguments.length && arguments[index] instanceof Boolean) {
+            return (Boolean) arguments[index];
+        }
+        throw Bailout.INSTANCE;
+    }
+
+    /** The long specialization of {@code LLDivNode}. */
+    public static long div(long left, long right) {
+        long result = left / right;
+        if ((left & right & result) < 0) {
+            throw new ArithmeticException("long overflow");
+        }
+        return result;
+    }
+
+    public final long callLong(int function, Object[] arguments) {
+        Object result = call(function, arguments);
+        if (result instanceof Long) {
+            return (Long) result;
+        }
+        throw Bailout.INSTANCE;
+    }
+
+    public final boolean callBoolean(int function, Object[] arguments) {
+        Object result = call(function, arguments);
+        if (result instanceof Boolean) {
+            return (Boolean) result;
+        }
+        throw Bailout.INSTANCE;
+    }
+
+    /**
+     * Calls a function of {@link #functions}. A callee that is compiled too is executed directly,
+     * without a frame; a callee that is no longer pure ends the compiled code.
+     */
+    public final Object call(int function, Object[] arguments) {
+        LLFunction callee = functions[function];
+        if (!callee.isPure()) {
+            throw Bailout.INSTANCE;
+        }
+        RootNode calleeRootNode = callee.getCallTarget().getRootNode();
+        if (calleeRootNode instanceof LLRootNode) {
+            LLJvmCode calleeCode = ((LLRootNode) calleeRootNode).getJvmCode(registry);
+            if (calleeCode != null) {
+                return calleeCode.execute(arguments);
+            }
+        }
+        return LLTailCallException.resolve(callee.getCallTarget().call(arguments), IndirectCallNode.getUncached());
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.nodes.jvm;
+
+import static com.guillermomolina.lazylanguage.nodes.jvm.LLJvmClassWriter.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
+import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.LLRootNode;
+import com.guillermomolina.lazylanguage.nodes.LLStatementNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLBlockNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLBreakNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLContinueNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLDebuggerNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLFunctionBodyNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLIfNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLReturnNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLWhileNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLAddNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLBooleanLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDivNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLFunctionLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterOrEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterThanNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLInvokeNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLessOrEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLessThanNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLogicalAndNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLogicalNotNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLongLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLMulNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLParenExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLShortCircuitNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLSubNode;
+import com.guillermomolina.lazylanguage.nodes.local.LLReadArgumentNode;
+import com.guillermomolina.lazylanguage.nodes.local.LLReadLocalVariableNode;
+import com.guillermomolina.lazylanguage.nodes.local.LLWriteLocalVariableNode;
+import com.guillermomolina.lazylanguage.nodes.util.LLUnboxNode;
+import com.guillermomolina.lazylanguage.runtime.LLFunction;
+import com.guillermomolina.lazylanguage.runtime.LLFunctionRegistry;
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.FrameSlotKind;
+
+/**
+ * Compiles the tree of a function body to the {@link LLJvmCode#execute execute} method of a JVM
+ * class. Local variables become JVM locals of the type the tree interpreter specialized them to,
+ * and operations on {@code long} values use the same overflow checks as the {@code long}
+ * specializations of their nodes. A function whose tree uses anything else, such as strings,
+ * objects or local variables that hold different types, is not compiled.
+ */
+final class LLJvmCompiler {
+
+    private static final String CODE = "com/guillermomolina/lazylanguage/nodes/jvm/LLJvmCode";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String NULL = "com/guillermomolina/lazylanguage/runtime/LLNull";
+    private static final String CONSTRUCTOR = "(Lcom/oracle/truffle/api/Assumption;[Lcom/guillermomolina/lazylanguage/runtime/LLFunction;" +
+                    "Lcom/guillermomolina/lazylanguage/runtime/LLFunctionRegistry;)V";
+    private static final String CALL = "(I[Ljava/lang/Object;)";
+
+    /** The static types of expressions. */
+    private static final int LONG = 0;
+    private static final int BOOLEAN = 1;
+    private static final int REFERENCE = 2;
+
+    /** Thrown when the body contains a node that cannot be compiled. */
+    private static final class UnsupportedNodeException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedNodeException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** The labels of the condition of a loop, where continue jumps to, and of its end. */
+    private static final class Loop {
+        final Label start = new Label();
+        final Label end = new Label();
+    }
+
+    /** Defines every generated class in a loader of its own, so it is unloaded with its code. */
+    private static final class Loader extends ClassLoader {
+        Loader() {
+            super(LLJvmCode.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private static final AtomicInteger classCount = new AtomicInteger();
+
+    private final LLRootNode rootNode;
+    private final LLFunctionRegistry registry;
+    private final String className;
+    private final LLJvmClassWriter writer;
+    private LLJvmClassWriter.Code code;
+    private final Map<FrameSlot, Integer> locals = new HashMap<>();
+    private final List<LLFunction> functions = new ArrayList<>();
+    private final Deque<Loop> loops = new ArrayDeque<>();
+
+    /** The nesting depth of operands that are not always evaluated. */
+    private int conditionalDepth;
+
+    LLJvmCompiler(LLRootNode rootNode, LLFunctionRegistry registry) {
+        this.rootNode = rootNode;
+        this.registry = registry;
+        this.className = "lazy/" + rootNode.getName() + "$" + classCount.incrementAndGet();
+        this.writer = new LLJvmClassWriter(className, CODE);
+    }
+
+    LLJvmCode compile(Assumption noToolAttached) {
+        if (!(rootNode.getBodyNode() instanceof LLFunctionBodyNode)) {
+            return null;
+        }
+        LLJvmClassWriter.Code constructor = writer.method("<init>", CONSTRUCTOR, 4);
+        for (int i = 0; i < 4; i++) {
+            constructor.local(ALOAD, i);
+        }
+        constructor.member(INVOKESPECIAL, -4, writer.methodConstant(CODE, "<init>", CONSTRUCTOR));
+        constructor.emit(RETURN, 0);
+
+        code = writer.method("execute", "([Ljava/lang/Object;)Ljava/lang/Object;", 2);
+        try {
+            initializeLocals();
+            statement(((LLFunctionBodyNode) rootNode.getBodyNode()).getBodyNode());
+        } catch (UnsupportedNodeException e) {
+            return null;
+        }
+        /* Falling off the end of the function returns the default null value. */
+        code.member(GETSTATIC, 1, writer.fieldConstant(NULL, "SINGLETON", "L" + NULL + ";"));
+        code.emit(ARETURN, -1);
+
+        byte[] bytes;
+        try {
+            bytes = writer.toByteArray();
+        } catch (IllegalStateException e) {
+            /* The method is too large for 16-bit jump offsets. */
+            return null;
+        }
+        try {
+            Class<?> codeClass = new Loader().define(className.replace('/', '.'), bytes);
+            return (LLJvmCode) codeClass.getConstructor(Assumption.class, LLFunction[].class, LLFunctionRegistry.class).newInstance(noToolAttached,
+                            functions.toArray(new LLFunction[0]), registry);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Allocates a JVM local for every local variable the tree interpreter specialized to a
+     * primitive type, and initializes it, so that the verifier sees it assigned on every path.
+     */
+    private void initializeLocals() {
+        int index = 2;
+        for (FrameSlot slot : rootNode.getFrameDescriptor().getSlots()) {
+            FrameSlotKind kind = rootNode.getFrameDescriptor().getFrameSlotKind(slot);
+            if (kind == FrameSlotKind.Long) {
+                code.loadLong(0);
+                code.local(LSTORE, index);
+                locals.put(slot, index);
+                index += 2;
+            } else if (kind == FrameSlotKind.Boolean) {
+                code.loadInt(0);
+                code.local(ISTORE, index);
+                locals.put(slot, index);
+                index++;
+            }
+        }
+    }
+
+    private void statement(LLStatementNode node) throws UnsupportedNodeException {
+        if (node instanceof LLBlockNode) {
+            for (LLStatementNode statement : ((LLBlockNode) node).getStatements()) {
+                statement(statement);
+            }
+        } else if (node instanceof LLIfNode) {
+            LLIfNode ifNode = (LLIfNode) node;
+            Label elseLabel = new Label();
+            condition(ifNode.getConditionNode(), elseLabel);
+            statement(ifNode.getThenPartNode());
+            if (ifNode.getElsePartNode() != null) {
+                Label endLabel = new Label();
+                code.jump(GOTO, endLabel);
+                code.place(elseLabel);
+                statement(ifNode.getElsePartNode());
+                code.place(endLabel);
+            } else {
+                code.place(elseLabel);
+            }
+        } else if (node instanceof LLWhileNode) {
+            LLWhileNode whileNode = (LLWhileNode) node;
+            Loop loop = new Loop();
+            code.place(loop.start);
+            code.local(ALOAD, 0);
+            code.member(INVOKEVIRTUAL, -1, writer.methodConstant(CODE, "poll", "()V"));
+            condition(whileNode.getConditionNode(), loop.end);
+            loops.push(loop);
+            statement(whileNode.getBodyNode());
+            loops.pop();
+            code.jump(GOTO, loop.start);
+            code.place(loop.end);
+        } else if (node instanceof LLBreakNode) {
+            code.jump(GOTO, currentLoop().end);
+        } else if (node instanceof LLContinueNode) {
+            code.jump(GOTO, currentLoop().start);
+        } else if (node instanceof LLReturnNode) {
+            LLExpressionNode valueNode = ((LLReturnNode) node).getValueNode();
+            if (valueNode != null) {
+                box(expression(valueNode, REFERENCE));
+            } else {
+                code.member(GETSTATIC, 1, writer.fieldConstant(NULL, "SINGLETON", "L" + NULL + ";"));
+            }
+            code.emit(ARETURN, -1);
+        } else if (node instanceof LLDebuggerNode) {
+            /* A no-op unless a debugger is attached, which makes the function use its tree. */
+        } else if (node instanceof LLExpressionNode) {
+            int type = expression((LLExpressionNode) node, REFERENCE);
+            code.emit(type == LONG ? POP2 : POP, type == LONG ? -2 : -1);
+        } else {
+            throw new UnsupportedNodeException();
+        }
+    }
+
+    /** Evaluates a condition and jumps to {@code falseLabel} if it is false. */
+    private void condition(LLExpressionNode node, Label falseLabel) throws UnsupportedNodeException {
+        require(expression(node, BOOLEAN), BOOLEAN);
+        code.jump(IFEQ, falseLabel);
+    }
+
+    /**
+     * Pushes the value of an expression and returns its type.
+     *
+     * @param hint the type the value is used as, which decides how the result of a call is checked
+     */
+    private int expression(LLExpressionNode node, int hint) throws UnsupportedNodeException {
+        if (node instanceof LLLongLiteralNode) {
+            /* Literals do not use the frame. */
+            code.loadLong((Long) node.executeGeneric(null));
+            return LONG;
+        } else if (node instanceof LLBooleanLiteralNode) {
+            code.loadInt((Boolean) node.executeGeneric(null) ? 1 : 0);
+            return BOOLEAN;
+        } else if (node instanceof LLParenExpressionNode) {
+            return expression(((LLParenExpressionNode) node).getExpression(), hint);
+        } else if (node instanceof LLUnboxNode) {
+            /* Primitive values are already unboxed. */
+            int type = expression(((LLUnboxNode) node).getValueNode(), hint);
+            if (type == REFERENCE) {
+                throw new UnsupportedNodeException();
+            }
+            return type;
+        } else if (node instanceof LLReadArgumentNode) {
+            if (hint == REFERENCE) {
+                throw new UnsupportedNodeException();
+            }
+            code.local(ALOAD, 1);
+            code.loadInt(((LLReadArgumentNode) node).getIndex());
+            if (hint == LONG) {
+                code.member(INVOKESTATIC, 0, writer.methodConstant(CODE, "longArgument", "([Ljava/lang/Object;I)J"));
+            } else {
+                code.member(INVOKESTATIC, -1, writer.methodConstant(CODE, "booleanArgument", "([Ljava/lang/Object;I)Z"));
+            }
+            return hint;
+        } else if (node instanceof LLReadLocalVariableNode) {
+            FrameSlot slot = ((LLReadLocalVariableNode) node).getSlot();
+            int type = localType(slot);
+            code.local(type == LONG ? LLOAD : ILOAD, locals.get(slot));
+            return type;
+        } else if (node instanceof LLWriteLocalVariableNode) {
+            LLWriteLocalVariableNode writeNode = (LLWriteLocalVariableNode) node;
+            FrameSlot slot = writeNode.getSlot();
+            int type = localType(slot);
+            if (conditionalDepth > 0) {
+                /* The variable might be read without being written. */
+                throw new UnsupportedNodeException();
+            }
+            require(expression(writeNode.getValueNode(), type), type);
+            code.emit(type == LONG ? DUP2 : DUP, type == LONG ? 2 : 1);
+            code.local(type == LONG ? LSTORE : ISTORE, locals.get(slot));
+            return type;
+        } else if (node instanceof LLEqualNode) {
+            LLBinaryNode binaryNode = (LLBinaryNode) node;
+            int type = expression(binaryNode.getLeftNode(), LONG);
+            require(expression(binaryNode.getRightNode(), type), type);
+            if (type == LONG) {
+                compare(IFNE);
+            } else {
+                /* For 0 and 1, (left ^ right) ^ 1 is left == right. */
+                code.emit(IXOR, -1);
+                code.loadInt(1);
+                code.emit(IXOR, -1);
+            }
+            return BOOLEAN;
+        } else if (node instanceof LLBinaryNode && arithmeticMethod((LLBinaryNode) node) != null) {
+            LLBinaryNode binaryNode = (LLBinaryNode) node;
+            require(expression(binaryNode.getLeftNode(), LONG), LONG);
+            require(expression(binaryNode.getRightNode(), LONG), LONG);
+            String owner = node instanceof LLDivNode ? CODE : "java/lang/Math";
+            code.member(INVOKESTATIC, -2, writer.methodConstant(owner, arithmeticMethod(binaryNode), "(JJ)J"));
+            return LONG;
+        } else if (node instanceof LLBinaryNode && comparisonJump((LLBinaryNode) node) >= 0) {
+            LLBinaryNode binaryNode = (LLBinaryNode) node;
+            require(expression(binaryNode.getLeftNode(), LONG), LONG);
+            require(expression(binaryNode.getRightNode(), LONG), LONG);
+            compare(comparisonJump(binaryNode));
+            return BOOLEAN;
+        } else if (node instanceof LLLogicalNotNode) {
+            require(expression(((LLLogicalNotNode) node).getValueNode(), BOOLEAN), BOOLEAN);
+            code.loadInt(1);
+            code.emit(IXOR, -1);
+            return BOOLEAN;
+        } else if (node instanceof LLShortCircuitNode) {
+            LLShortCircuitNode shortCircuitNode = (LLShortCircuitNode) node;
+            Label endLabel = new Label();
+            require(expression(shortCircuitNode.getLeftNode(), BOOLEAN), BOOLEAN);
+            code.emit(DUP, 1);
+            code.jump(node instanceof LLLogicalAndNode ? IFEQ : IFNE, endLabel);
+            code.emit(POP, -1);
+            conditionalDepth++;
+            require(expression(shortCircuitNode.getRightNode(), BOOLEAN), BOOLEAN);
+            conditionalDepth--;
+            code.place(endLabel);
+            return BOOLEAN;
+        } else if (node instanceof LLInvokeNode) {
+            return invoke((LLInvokeNode) node, hint);
+        }
+        throw new UnsupportedNodeException();
+    }
+
+    /**
+     * Calls a function that is pure when it is compiled. The arguments are boxed, as for any other
+     * call, and the result is checked to have the type it is used as.
+     */
+    private int invoke(LLInvokeNode node, int hint) throws UnsupportedNodeException {
+        if (!(node.getFunctionNode() instanceof LLFunctionLiteralNode)) {
+            throw new UnsupportedNodeException();
+        }
+        LLFunction function = registry.lookup(((LLFunctionLiteralNode) node.getFunctionNode()).getFunctionName(), false);
+        if (function == null || !function.isPure()) {
+            throw new UnsupportedNodeException();
+        }
+        int functionIndex = functions.indexOf(function);
+        if (functionIndex < 0) {
+            functions.add(function);
+            functionIndex = functions.size() - 1;
+        }
+        LLExpressionNode[] argumentNodes = node.getArgumentNodes();
+        code.local(ALOAD, 0);
+        code.loadInt(functionIndex);
+        code.loadInt(argumentNodes.length);
+        code.member(ANEWARRAY, 0, writer.classConstant(OBJECT));
+        for (int i = 0; i < argumentNodes.length; i++) {
+            code.emit(DUP, 1);
+            code.loadInt(i);
+            box(expression(argumentNodes[i], REFERENCE));
+            code.emit(AASTORE, -3);
+        }
+        if (hint == LONG) {
+            code.member(INVOKEVIRTUAL, -1, writer.methodConstant(CODE, "callLong", CALL + "J"));
+        } else if (hint == BOOLEAN) {
+            code.member(INVOKEVIRTUAL, -2, writer.methodConstant(CODE, "callBoolean", CALL + "Z"));
+        } else {
+            code.member(INVOKEVIRTUAL, -2, writer.methodConstant(CODE, "call", CALL + "Ljava/lang/Object;"));
+        }
+        return hint;
+    }
+
+    /** Compares two {@code long} values and pushes {@code false} if {@code falseJump} is taken. */
+    private void compare(int falseJump) {
+        Label falseLabel = new Label();
+        Label endLabel = new Label();
+        code.emit(LCMP, -3);
+        code.jump(falseJump, falseLabel);
+        code.loadInt(1);
+        code.jump(GOTO, endLabel);
+        code.place(falseLabel);
+        code.loadInt(0);
+        code.place(endLabel);
+    }
+
+    /** Converts the value on top of the stack to the boxed value the tree interpreter uses. */
+    private void box(int type) {
+        if (type == LONG) {
+            code.member(INVOKESTATIC, -1, writer.methodConstant("java/lang/Long", "valueOf", "(J)Ljava/lang/Long;"));
+        } else if (type == BOOLEAN) {
+            code.member(INVOKESTATIC, 0, writer.methodConstant("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;"));
+        }
+    }
+
+    private static String arithmeticMethod(LLBinaryNode node) {
+        if (node instanceof LLAddNode) {
+            return "addExact";
+        } else if (node instanceof LLSubNode) {
+            return "subtractExact";
+        } else if (node instanceof LLMulNode) {
+            return "multiplyExact";
+        } else if (node instanceof LLDivNode) {
+            return "div";
+        }
+        return null;
+    }
+
+    /** Returns the jump taken by {@code LCMP} results for which the comparison is false. */
+    private static int comparisonJump(LLBinaryNode node) {
+        if (node instanceof LLLessThanNode) {
+            return IFGE;
+        } else if (node instanceof LLLessOrEqualNode) {
+            return IFGT;
+        } else if (node instanceof LLGreaterThanNode) {
+            return IFLE;
+        } else if (node instanceof LLGreaterOrEqualNode) {
+            return IFLT;
+        }
+        return -1;
+    }
+
+    private int localType(FrameSlot slot) throws UnsupportedNodeException {
+        if (!locals.containsKey(slot)) {
+            throw new UnsupportedNodeException();
+        }
+        return rootNode.getFrameDescriptor().getFrameSlotKind(slot) == FrameSlotKind.Long ? LONG : BOOLEAN;
+    }
+
+    private static void require(int type, int expectedType) throws UnsupportedNodeException {
+        if (type != expectedType) {
+            throw new UnsupportedNodeException();
+        }
+    }
+
+    private Loop currentLoop() throws UnsupportedNodeException {
+        if (loops.isEmpty()) {
+            throw new UnsupportedNodeException();
+        }
+        return loops.peek();
+    }
+}
@@ -43,12 +43,11 @@ package com.guillermomolina.lazylanguage.nodes.local;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
 
 import com.guillermomolina.lazylanguage.nodes.LLEvalRootNode;
 import com.guillermomolina.lazylanguage.nodes.LLRootNode;
-import com.guillermomolina.lazylanguage.nodes.LLStatementNode;
 import com.guillermomolina.lazylanguage.nodes.controlflow.LLBlockNode;
+import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
 import com.guillermomolina.lazylanguage.runtime.LLNull;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.frame.Frame;
@@ -61,7 +60,6 @@ import com.oracle.truffle.api.interop.UnsupportedMessageException;
 import com.oracle.truffle.api.library.ExportLibrary;
 import com.oracle.truffle.api.library.ExportMessage;
 import com.oracle.truffle.api.nodes.Node;
-import com.oracle.truffle.api.nodes.NodeUtil;
 import com.oracle.truffle.api.nodes.NodeVisitor;
 import com.oracle.truffle.api.nodes.RootNode;
 
@@ -237,79 +235,21 @@ public final class LLLexicalScope {
         return varSlots;
     }
 
-    private boolean hasParentVar(String name) {
-        LLLexicalScope p = this;
-        while ((p = p.findParent()) != null) {
-            if (p.getVars().containsKey(name)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private Map<String, FrameSlot> collectVars(Node varsBlock, Node currentNode) {
-        // Variables are slot-based.
-        // To collect declared variables, traverse the block's AST and find slots associated
-        // with LLWriteLocalVariableNode. The traversal stops when we hit the current node.
-        Map<String, FrameSlot> slots = new LinkedHashMap<>(4);
-        NodeUtil.forEachChild(varsBlock, new NodeVisitor() {
-            @Override
-            public boolean visit(Node node) {
-                if (node == currentNode) {
-                    return false;
-                }
-                // Do not enter any nested blocks.
-                if (!(node instanceof LLBlockNode)) {
-                    boolean all = NodeUtil.forEachChild(node, this);
-                    if (!all) {
-                        return false;
-                    }
-                }
-                // Write to a variable is a declaration unless it exists already in a parent scope.
-                if (node instanceof LLWriteLocalVariableNode) {
-                    LLWriteLocalVariableNode wn = (LLWriteLocalVariableNode) node;
-                    String name = Objects.toString(wn.getSlot().getIdentifier());
-                    if (!hasParentVar(name)) {
-                        slots.put(name, wn.getSlot());
-                    }
-                }
-                return true;
-            }
-        });
-        return slots;
+    private static Map<String, FrameSlot> collectVars(LLBlockNode varsBlock, Node currentNode) {
+        // Variables are slot-based. The parser records the variables declared in each block, a
+        // write to a variable being a declaration unless it exists already in a parent scope.
+        return varsBlock.getLocalsBefore(currentNode);
     }
 
-    private static Map<String, FrameSlot> collectArgs(Node block) {
-        // Arguments are pushed to frame slots at the beginning of the function block.
-        // To collect argument slots, search for LLReadArgumentNode inside of
-        // LLWriteLocalVariableNode.
+    private static Map<String, FrameSlot> collectArgs(LLBlockNode block) {
+        // Arguments are pushed to frame slots at the beginning of the function block, the slots
+        // of arguments have the argument index as their info.
         Map<String, FrameSlot> args = new LinkedHashMap<>(4);
-        NodeUtil.forEachChild(block, new NodeVisitor() {
-
-            private LLWriteLocalVariableNode wn; // The current write node containing a slot
-
-            @Override
-            public boolean visit(Node node) {
-                // When there is a write node, search for LLReadArgumentNode among its children:
-                if (node instanceof LLWriteLocalVariableNode) {
-                    wn = (LLWriteLocalVariableNode) node;
-                    boolean all = NodeUtil.forEachChild(node, this);
-                    wn = null;
-                    return all;
-                } else if (wn != null && (node instanceof LLReadArgumentNode)) {
-                    FrameSlot slot = wn.getSlot();
-                    String name = Objects.toString(slot.getIdentifier());
-                    assert !args.containsKey(name) : name + " argument exists already.";
-                    args.put(name, slot);
-                    return true;
-                } else if (wn == null && (node instanceof LLStatementNode)) {
-                    // A different Lazy node - we're done.
-                    return false;
-                } else {
-                    return NodeUtil.forEachChild(node, this);
-                }
+        for (Map.Entry<String, FrameSlot> entry : block.getLocalsBefore(null).entrySet()) {
+            if (entry.getValue().getInfo() != null) {
+                args.put(entry.getKey(), entry.getValue());
             }
-        });
+        }
         return args;
     }
 
@@ -373,6 +313,10 @@ public final class LLLexicalScope {
                 } else {
                     value = frame.getValue(slot);
                 }
+                if (value instanceof LLBigNumber) {
+                    /* The number of an accumulation must not change once a tool has it. */
+                    ((LLBigNumber) value).share();
+                }
                 return value;
             }
         }
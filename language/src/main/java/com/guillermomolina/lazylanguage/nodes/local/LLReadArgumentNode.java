@@ -68,6 +68,10 @@ public class LLReadArgumentNode extends LLExpressionNode {
         this.index = index;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public Object executeGeneric(VirtualFrame frame) {
         Object[] args = frame.getArguments();
@@ -48,8 +48,10 @@ import com.oracle.truffle.api.frame.FrameUtil;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.instrumentation.StandardTags.ReadVariableTag;
 import com.oracle.truffle.api.instrumentation.Tag;
+import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
 import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
 import com.guillermomolina.lazylanguage.nodes.interop.NodeObjectDescriptor;
+import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
 
 /**
  * Node to read a local variable from a function's {@link VirtualFrame frame}. The Truffle frame API
@@ -58,7 +60,7 @@ import com.guillermomolina.lazylanguage.nodes.interop.NodeObjectDescriptor;
  * <p>
  * We use the primitive type only when the same primitive type is uses for all writes. If the local
  * variable is type-polymorphic, then the value is always stored as an Object, i.e., primitive
- * values are boxed. Even a mixture of {@code long} and {@code boolean} writes leads to both being
+ * values are boxed. Even a mixture of {@code long} and {@code double} writes leads to both being
  * stored boxed.
  */
 @NodeField(name = "slot", type = FrameSlot.class)
@@ -68,7 +70,7 @@ public abstract class LLReadLocalVariableNode extends LLExpressionNode {
      * Returns the descriptor of the accessed local variable. The implementation of this method is
      * created by the Truffle DLL based on the {@link NodeField} annotation on the class.
      */
-    protected abstract FrameSlot getSlot();
+    public abstract FrameSlot getSlot();
 
     @Specialization(guards = "frame.isLong(getSlot())")
     protected long readLong(VirtualFrame frame) {
@@ -85,7 +87,12 @@ public abstract class LLReadLocalVariableNode extends LLExpressionNode {
         return FrameUtil.getBooleanSafe(frame, getSlot());
     }
 
-    @Specialization(replaces = {"readLong", "readBoolean"})
+    @Specialization(guards = "frame.isDouble(getSlot())")
+    protected double readDouble(VirtualFrame frame) {
+        return FrameUtil.getDoubleSafe(frame, getSlot());
+    }
+
+    @Specialization(replaces = {"readLong", "readBoolean", "readDouble"})
     protected Object readObject(VirtualFrame frame) {
         if (!frame.isObject(getSlot())) {
             /*
@@ -101,7 +108,12 @@ public abstract class LLReadLocalVariableNode extends LLExpressionNode {
             return result;
         }
 
-        return FrameUtil.getObjectSafe(frame, getSlot());
+        Object result = FrameUtil.getObjectSafe(frame, getSlot());
+        if (result instanceof LLBigNumber && !LLBinaryNode.isAccumulated(this)) {
+            /* The value can now be referenced by another value, so it must no longer change. */
+            ((LLBigNumber) result).share();
+        }
+        return result;
     }
 
     @Override
@@ -49,6 +49,7 @@ import com.oracle.truffle.api.frame.FrameSlotKind;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.instrumentation.StandardTags.WriteVariableTag;
 import com.oracle.truffle.api.instrumentation.Tag;
+import com.oracle.truffle.api.nodes.RootNode;
 import com.oracle.truffle.api.source.Source;
 import com.oracle.truffle.api.source.SourceSection;
 import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
@@ -67,7 +68,9 @@ public abstract class LLWriteLocalVariableNode extends LLExpressionNode {
      * Returns the descriptor of the accessed local variable. The implementation of this method is
      * created by the Truffle DLL based on the {@link NodeField} annotation on the class.
      */
-    protected abstract FrameSlot getSlot();
+    public abstract FrameSlot getSlot();
+
+    public abstract LLExpressionNode getValueNode();
 
     /**
      * Returns the child node <code>nameNode</code>. The implementation of this method is created by
@@ -98,6 +101,15 @@ public abstract class LLWriteLocalVariableNode extends LLExpressionNode {
         return value;
     }
 
+    @Specialization(guards = "isDoubleOrIllegal(frame)")
+    protected double writeDouble(VirtualFrame frame, double value) {
+        /* Initialize type on first write of the local variable. No-op if kind is already Double. */
+        frame.getFrameDescriptor().setFrameSlotKind(getSlot(), FrameSlotKind.Double);
+
+        frame.setDouble(getSlot(), value);
+        return value;
+    }
+
     /**
      * Generic write method that works for all possible types.
      * <p>
@@ -108,7 +120,7 @@ public abstract class LLWriteLocalVariableNode extends LLExpressionNode {
      * {@link Object}, it is guaranteed to never fail, i.e., once we are in this specialization the
      * node will never be re-specialized.
      */
-    @Specialization(replaces = {"writeLong", "writeBoolean"})
+    @Specialization(replaces = {"writeLong", "writeBoolean", "writeDouble"})
     protected Object write(VirtualFrame frame, Object value) {
         /*
          * Regardless of the type before, the new and final type of the local variable is Object.
@@ -141,6 +153,11 @@ public abstract class LLWriteLocalVariableNode extends LLExpressionNode {
         return kind == FrameSlotKind.Boolean || kind == FrameSlotKind.Illegal;
     }
 
+    protected boolean isDoubleOrIllegal(VirtualFrame frame) {
+        final FrameSlotKind kind = frame.getFrameDescriptor().getFrameSlotKind(getSlot());
+        return kind == FrameSlotKind.Double || kind == FrameSlotKind.Illegal;
+    }
+
     @Override
     public boolean hasTag(Class<? extends Tag> tag) {
         return tag == WriteVariableTag.class || super.hasTag(tag);
@@ -153,12 +170,13 @@ public abstract class LLWriteLocalVariableNode extends LLExpressionNode {
         if (nameNode.getSourceCharIndex() == -1) {
             nameSourceSection = null;
         } else {
-            SourceSection rootSourceSection = getRootNode().getSourceSection();
+            RootNode rootNode = getRootNode();
+            SourceSection rootSourceSection = rootNode.getSourceSection();
             if (rootSourceSection == null) {
                 nameSourceSection = null;
             } else {
                 Source source = rootSourceSection.getSource();
-                nameSourceSection = source.createSection(nameNode.getSourceCharIndex(), nameNode.getSourceLength());
+                nameSourceSection = source.createSection(nameNode.getSourceCharIndex() + getSourceShift(rootNode), nameNode.getSourceLength());
             }
         }
         return NodeObjectDescriptor.writeVariable(getSlot().getIdentifier().toString(), nameSourceSection);
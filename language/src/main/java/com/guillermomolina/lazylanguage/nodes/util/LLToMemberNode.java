@@ -53,6 +53,7 @@ import com.oracle.truffle.api.library.CachedLibrary;
 import com.oracle.truffle.api.nodes.Node;
 import com.guillermomolina.lazylanguage.nodes.LLTypes;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 
 /**
  * The node to normalize any value to an Lazy value. This is useful to reduce the number of values
@@ -82,12 +83,24 @@ public abstract class LLToMemberNode extends Node {
         return String.valueOf(value);
     }
 
+    @Specialization
+    @TruffleBoundary
+    protected static String fromDouble(double value) {
+        return String.valueOf(value);
+    }
+
     @Specialization
     @TruffleBoundary
     protected static String fromBigNumber(LLBigNumber value) {
         return value.toString();
     }
 
+    @Specialization
+    @TruffleBoundary
+    protected static String fromDecimal(LLDecimal value) {
+        return value.toString();
+    }
+
     @Specialization(limit = "LIMIT")
     protected static String fromInterop(Object value, @CachedLibrary("value") InteropLibrary interop) throws UnknownIdentifierException {
         try {
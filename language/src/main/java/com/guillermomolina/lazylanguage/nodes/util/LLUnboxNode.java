@@ -51,19 +51,32 @@ import com.oracle.truffle.api.library.CachedLibrary;
 import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
 import com.guillermomolina.lazylanguage.nodes.LLTypes;
 import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 import com.guillermomolina.lazylanguage.runtime.LLFunction;
 import com.guillermomolina.lazylanguage.runtime.LLNull;
+import com.guillermomolina.lazylanguage.runtime.LLRope;
 
 /**
  * The node to normalize any value to an Lazy value. This is useful to reduce the number of values
  * expression nodes need to expect.
  */
 @TypeSystemReference(LLTypes.class)
-@NodeChild
+@NodeChild("valueNode")
 public abstract class LLUnboxNode extends LLExpressionNode {
 
     static final int LIMIT = 5;
 
+    public abstract LLExpressionNode getValueNode();
+
+    /**
+     * Keeps {@link LLRope ropes} as they are. It must come before {@link #fromString}, which would
+     * flatten them.
+     */
+    @Specialization
+    protected static LLRope fromRope(LLRope value) {
+        return value;
+    }
+
     @Specialization
     protected static String fromString(String value) {
         return value;
@@ -79,11 +92,21 @@ public abstract class LLUnboxNode extends LLExpressionNode {
         return value;
     }
 
+    @Specialization
+    protected static double fromDouble(double value) {
+        return value;
+    }
+
     @Specialization
     protected static LLBigNumber fromBigNumber(LLBigNumber value) {
         return value;
     }
 
+    @Specialization
+    protected static LLDecimal fromDecimal(LLDecimal value) {
+        return value;
+    }
+
     @Specialization
     protected static LLFunction fromFunction(LLFunction value) {
         return value;
@@ -100,7 +123,7 @@ public abstract class LLUnboxNode extends LLExpressionNode {
             if (interop.fitsInLong(value)) {
                 return interop.asLong(value);
             } else if (interop.fitsInDouble(value)) {
-                return (long) interop.asDouble(value);
+                return interop.asDouble(value);
             } else if (interop.isString(value)) {
                 return interop.asString(value);
             } else if (interop.isBoolean(value)) {
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+
+import com.guillermomolina.lazylanguage.LLLanguage;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.TruffleFile;
+import com.oracle.truffle.api.TruffleLanguage.Env;
+import com.oracle.truffle.api.TruffleLogger;
+import com.oracle.truffle.api.source.Source;
+
+/**
+ * A persistent cache of parsed sources, stored as one {@link LLAstSnapshot} file per source in a
+ * local directory. Files are named after a hash of the source characters and of the snapshot
+ * format and grammar versions, so a change of either never reads an outdated snapshot. Loading a
+ * snapshot replays the stored parse trees through the {@link LLNodeFactory}, without running the
+ * lexer or the parser.
+ * <p>
+ * The cache is best effort: a snapshot that cannot be read or written is logged and ignored.
+ */
+public final class LLAstCache {
+    private static final TruffleLogger LOG = TruffleLogger.getLogger(LLLanguage.ID, LLAstCache.class);
+    private static final String SUFFIX = ".llast";
+
+    private final LLLanguage language;
+    private final String directory;
+
+    public LLAstCache(LLLanguage language, String directory) {
+        this.language = language;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the functions of {@code source} rebuilt from its snapshot, or {@code null} if there is
+     * no usable snapshot.
+     */
+    public Map<String, RootCallTarget> load(Env env, Source source) {
+        try {
+            TruffleFile file = env.getPublicTruffleFile(directory).resolve(snapshotName(source));
+            if (!file.isRegularFile()) {
+                return null;
+            }
+            List<LazyLanguageParser.FunctionContext> functions;
+            try (InputStream in = new BufferedInputStream(file.newInputStream())) {
+                functions = LLAstSnapshot.read(in, source);
+            }
+            if (functions == null) {
+                return null;
+            }
+            LLNodeFactory factory = new LLNodeFactory(language, source);
+            for (LazyLanguageParser.FunctionContext function : functions) {
+                factory.visit(function);
+            }
+            return factory.getAllFunctions();
+        } catch (IOException | RuntimeException e) {
+            /* Includes damaged snapshots the factory cannot build; parsing reports real errors. */
+            LOG.fine(() -> "Cannot load AST snapshot of " + source.getName() + ": " + e);
+            return null;
+        }
+    }
+
+    /** Writes the snapshot of the functions of {@code source}. */
+    public void store(Env env, Source source, LLAstSnapshot snapshot) {
+        try {
+            TruffleFile dir = env.getPublicTruffleFile(directory);
+            dir.createDirectories();
+            String name = snapshotName(source);
+            /* Write a temporary file first, so that concurrent readers never see partial snapshots. */
+            TruffleFile tmp = env.createTempFile(dir, name, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(tmp.newOutputStream()))) {
+                snapshot.writeTo(out);
+            }
+            tmp.move(dir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            LOG.fine(() -> "Cannot store AST snapshot of " + source.getName() + ": " + e);
+        }
+    }
+
+    private static String snapshotName(Source source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(ByteBuffer.allocate(8).putInt(LLAstSnapshot.FORMAT_VERSION).putInt(LLAstSnapshot.GRAMMAR_HASH).array());
+        digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(source.getCharacters())));
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest.digest()) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return name.append(SUFFIX).toString();
+    }
+}
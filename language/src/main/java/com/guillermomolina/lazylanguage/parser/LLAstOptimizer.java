@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.parser;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import com.guillermomolina.lazylanguage.nodes.LLBinaryNode;
+import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.LLStatementNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLBreakNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLContinueNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLReturnNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLAddNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLBigIntegerLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLBooleanLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDivNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterOrEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterThanNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLessOrEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLessThanNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLogicalNotNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLongLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLMulNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLParenExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLStringLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLSubNode;
+import com.guillermomolina.lazylanguage.nodes.util.LLUnboxNode;
+import com.guillermomolina.lazylanguage.runtime.LLBigNumber;
+
+/**
+ * Simplifications applied by the {@link LLNodeFactory} while it builds the AST, before the nodes
+ * are adopted by an {@link com.guillermomolina.lazylanguage.nodes.LLRootNode}.
+ * <p>
+ * Constant folding computes operators whose operands are literals exactly as the specializations
+ * of the operator nodes would, and replaces them with a literal. Operations that fail at run time,
+ * like a division by zero or a type error, are never folded so that the error is still reported
+ * when (and if) the expression executes.
+ */
+final class LLAstOptimizer {
+
+    private LLAstOptimizer() {
+    }
+
+    /**
+     * Returns a literal with the value of {@code node} if all its operands are constant, or
+     * {@code node} itself otherwise. The literal keeps the source section of {@code node}.
+     */
+    static LLExpressionNode foldConstants(LLExpressionNode node) {
+        Object value = evaluate(node);
+        if (value == null) {
+            return node;
+        }
+        LLExpressionNode literal;
+        if (value instanceof Long) {
+            literal = new LLLongLiteralNode((Long) value);
+        } else if (value instanceof LLBigNumber) {
+            literal = new LLBigIntegerLiteralNode(((LLBigNumber) value).getValue());
+        } else if (value instanceof Boolean) {
+            literal = new LLBooleanLiteralNode((Boolean) value);
+        } else {
+            literal = new LLStringLiteralNode(((String) value).intern());
+        }
+        if (node.hasSource()) {
+            literal.setSourceSection(node.getSourceCharIndex(), node.getSourceLength());
+        }
+        literal.addExpressionTag();
+        return literal;
+    }
+
+    /**
+     * Drops the statements of a block that follow a {@code return}, {@code break} or
+     * {@code continue}, since they can never execute.
+     */
+    static void removeUnreachable(List<LLStatementNode> statements) {
+        for (int i = 0; i < statements.size() - 1; i++) {
+            LLStatementNode statement = statements.get(i);
+            if (statement instanceof LLReturnNode || statement instanceof LLBreakNode
+                            || statement instanceof LLContinueNode) {
+                statements.subList(i + 1, statements.size()).clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the constant value of {@code node}, or {@code null} if it is not a constant or its
+     * evaluation would fail.
+     */
+    private static Object evaluate(LLExpressionNode node) {
+        if (node instanceof LLLongLiteralNode || node instanceof LLBigIntegerLiteralNode
+                        || node instanceof LLBooleanLiteralNode || node instanceof LLStringLiteralNode) {
+            return node.executeGeneric(null);
+        }
+        if (node instanceof LLParenExpressionNode) {
+            return evaluate(((LLParenExpressionNode) node).getExpression());
+        }
+        if (node instanceof LLUnboxNode) {
+            return evaluate(((LLUnboxNode) node).getValueNode());
+        }
+        if (node instanceof LLLogicalNotNode) {
+            Object value = evaluate(((LLLogicalNotNode) node).getValueNode());
+            return value instanceof Boolean ? !(Boolean) value : null;
+        }
+        if (!(node instanceof LLBinaryNode)) {
+            return null;
+        }
+        Object left = evaluate(((LLBinaryNode) node).getLeftNode());
+        if (left == null) {
+            return null;
+        }
+        Object right = evaluate(((LLBinaryNode) node).getRightNode());
+        if (right == null) {
+            return null;
+        }
+        if (node instanceof LLAddNode && (left instanceof String || right instanceof String)) {
+            return left.toString() + right.toString();
+        }
+        if (node instanceof LLEqualNode) {
+            return equal(left, right);
+        }
+        if (!isNumber(left) || !isNumber(right)) {
+            return null;
+        }
+        if (left instanceof Long && right instanceof Long) {
+            Object result = evaluateLong(node, (Long) left, (Long) right);
+            if (result != null) {
+                return result;
+            }
+        }
+        return evaluateBig(node, toBigInteger(left), toBigInteger(right));
+    }
+
+    private static Object evaluateLong(LLExpressionNode node, long left, long right) {
+        try {
+            if (node instanceof LLAddNode) {
+                return Math.addExact(left, right);
+            } else if (node instanceof LLSubNode) {
+                return Math.subtractExact(left, right);
+            } else if (node instanceof LLMulNode) {
+                return Math.multiplyExact(left, right);
+            } else if (node instanceof LLDivNode) {
+                /* Long.MIN_VALUE / -1 overflows, and is computed on big numbers too. */
+                return right == 0 || (left == Long.MIN_VALUE && right == -1) ? null : left / right;
+            }
+        } catch (ArithmeticException e) {
+            /* Overflow: computed on big numbers, like the overflow case of the long specialization. */
+        }
+        return null;
+    }
+
+    private static Object evaluateBig(LLExpressionNode node, BigInteger left, BigInteger right) {
+        if (node instanceof LLAddNode) {
+            return LLBigNumber.normalize(left.add(right));
+        } else if (node instanceof LLSubNode) {
+            return LLBigNumber.normalize(left.subtract(right));
+        } else if (node instanceof LLMulNode) {
+            return LLBigNumber.normalize(left.multiply(right));
+        } else if (node instanceof LLDivNode) {
+            return right.signum() == 0 ? null : LLBigNumber.normalize(left.divide(right));
+        } else if (node instanceof LLLessThanNode) {
+            return left.compareTo(right) < 0;
+        } else if (node instanceof LLLessOrEqualNode) {
+            return left.compareTo(right) <= 0;
+        } else if (node instanceof LLGreaterThanNode) {
+            return left.compareTo(right) > 0;
+        } else if (node instanceof LLGreaterOrEqualNode) {
+            return left.compareTo(right) >= 0;
+        }
+        return null;
+    }
+
+    private static Object equal(Object left, Object right) {
+        if (isNumber(left) && isNumber(right)) {
+            return toBigInteger(left).equals(toBigInteger(right));
+        } else if (left instanceof String && right instanceof String) {
+            return left.equals(right);
+        } else if (left instanceof Boolean && right instanceof Boolean) {
+            return left.equals(right);
+        }
+        return null;
+    }
+
+    private static boolean isNumber(Object value) {
+        return value instanceof Long || value instanceof LLBigNumber;
+    }
+
+    private static BigInteger toBigInteger(Object value) {
+        return value instanceof Long ? BigInteger.valueOf((Long) value) : ((LLBigNumber) value).getValue();
+    }
+}
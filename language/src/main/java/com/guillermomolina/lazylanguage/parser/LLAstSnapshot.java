@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.oracle.truffle.api.source.Source;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+
+/**
+ * Compact serialized form of the parse trees of the functions of a source unit, used by the
+ * {@link LLAstCache}. Rule contexts are written as their rule index and number of children, tokens
+ * as their type, offset and length. The text and the line and column of the tokens are not
+ * stored; they are read from the source when the snapshot is loaded. Loading a snapshot neither lexes nor parses, and does not
+ * even initialize the generated parser.
+ */
+public final class LLAstSnapshot {
+    /* Bump whenever the encoding changes. */
+    static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x4c4c4153; // "LLAS"
+
+    /* Of compile time constants, so it does not initialize LazyLanguageParser or LazyLanguageLexer. */
+    static final int GRAMMAR_HASH = 31 * LazyLanguageParser._serializedATN.hashCode() + LazyLanguageLexer._serializedATN.hashCode();
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private int functionCount;
+
+    /** Appends the parse tree of a function. */
+    public void add(LazyLanguageParser.FunctionContext function) {
+        try {
+            writeTree(out, function, new int[1]);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        functionCount++;
+    }
+
+    /** Removes all functions, e.g., when a source unit is parsed again. */
+    public void clear() {
+        bytes.reset();
+        functionCount = 0;
+    }
+
+    void writeTo(DataOutput output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(GRAMMAR_HASH);
+        writeVarInt(output, functionCount);
+        output.write(bytes.toByteArray());
+    }
+
+    /**
+     * Reads the function parse trees written by {@link #writeTo}, with tokens that refer to the
+     * characters of {@code source}. Returns {@code null} if the snapshot was written by a different
+     * version of the format or the grammar.
+     */
+    static List<LazyLanguageParser.FunctionContext> read(InputStream stream, Source source) throws IOException {
+        DataInputStream input = new DataInputStream(stream);
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || input.readInt() != GRAMMAR_HASH) {
+            return null;
+        }
+        Pair<TokenSource, CharStream> tokenSource = new Pair<>(null, new LLSourceCharStream(source));
+        int count = readVarInt(input);
+        List<LazyLanguageParser.FunctionContext> functions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ParseTree tree = readTree(input, null, source, tokenSource, new int[1]);
+            if (!(tree instanceof LazyLanguageParser.FunctionContext)) {
+                throw new IOException("Corrupted snapshot");
+            }
+            functions.add((LazyLanguageParser.FunctionContext) tree);
+        }
+        return functions;
+    }
+
+    /*
+     * A rule context is written as its non-negative rule index followed by the number of its
+     * children, a token as its negated type followed by its offset relative to the previous token
+     * of the same function and its length.
+     */
+    private static void writeTree(DataOutput output, ParseTree tree, int[] offset) throws IOException {
+        if (tree instanceof TerminalNode) {
+            Token token = ((TerminalNode) tree).getSymbol();
+            output.writeByte(-1 - token.getType());
+            writeVarInt(output, token.getStartIndex() - offset[0]);
+            writeVarInt(output, token.getStopIndex() - token.getStartIndex() + 1);
+            offset[0] = token.getStartIndex();
+        } else {
+            ParserRuleContext ctx = (ParserRuleContext) tree;
+            output.writeByte(ctx.getRuleIndex());
+            writeVarInt(output, ctx.getChildCount());
+            for (int i = 0; i < ctx.getChildCount(); i++) {
+                writeTree(output, ctx.getChild(i), offset);
+            }
+        }
+    }
+
+    private static ParseTree readTree(DataInput input, ParserRuleContext parent, Source source, Pair<TokenSource, CharStream> tokenSource,
+            int[] offset) throws IOException {
+        int tag = input.readByte();
+        if (tag < 0) {
+            int start = offset[0] + readVarInt(input);
+            int stop = start + readVarInt(input) - 1;
+            offset[0] = start;
+            CommonToken token = new CommonToken(tokenSource, -1 - tag, Token.DEFAULT_CHANNEL, start, stop);
+            /* The position is not stored; errors reported on the token need it. */
+            token.setLine(source.getLineNumber(start));
+            token.setCharPositionInLine(source.getColumnNumber(start) - 1);
+            TerminalNode terminal = new TerminalNodeImpl(token);
+            if (parent != null) {
+                parent.addChild(terminal);
+            }
+            return terminal;
+        }
+        ParserRuleContext ctx = createContext(tag, parent);
+        if (parent != null) {
+            parent.addChild(ctx);
+        }
+        int childCount = readVarInt(input);
+        for (int i = 0; i < childCount; i++) {
+            readTree(input, ctx, source, tokenSource, offset);
+        }
+        if (childCount > 0) {
+            ctx.start = firstToken(ctx.getChild(0));
+            ctx.stop = lastToken(ctx.getChild(childCount - 1));
+        }
+        setLabels(ctx);
+        return ctx;
+    }
+
+    private static ParserRuleContext createContext(int ruleIndex, ParserRuleContext parent) throws IOException {
+        switch (ruleIndex) {
+            case LazyLanguageParser.RULE_lazylanguage:
+                return new LazyLanguageParser.LazylanguageContext(parent, -1);
+            case LazyLanguageParser.RULE_function:
+                return new LazyLanguageParser.FunctionContext(parent, -1);
+            case LazyLanguageParser.RULE_functionParameters:
+                return new LazyLanguageParser.FunctionParametersContext(parent, -1);
+            case LazyLanguageParser.RULE_block:
+                return new LazyLanguageParser.BlockContext(parent, -1);
+            case LazyLanguageParser.RULE_statement:
+                return new LazyLanguageParser.StatementContext(parent, -1);
+            case LazyLanguageParser.RULE_whileStatement:
+                return new LazyLanguageParser.WhileStatementContext(parent, -1);
+            case LazyLanguageParser.RULE_breakStatement:
+                return new LazyLanguageParser.BreakStatementContext(parent, -1);
+            case LazyLanguageParser.RULE_continueStatement:
+                return new LazyLanguageParser.ContinueStatementContext(parent, -1);
+            case LazyLanguageParser.RULE_ifStatement:
+                return new LazyLanguageParser.IfStatementContext(parent, -1);
+            case LazyLanguageParser.RULE_returnStatement:
+                return new LazyLanguageParser.ReturnStatementContext(parent, -1);
+            case LazyLanguageParser.RULE_debuggerStatement:
+                return new LazyLanguageParser.DebuggerStatementContext(parent, -1);
+            case LazyLanguageParser.RULE_expression:
+                return new LazyLanguageParser.ExpressionContext(parent, -1);
+            case LazyLanguageParser.RULE_logicTerm:
+                return new LazyLanguageParser.LogicTermContext(parent, -1);
+            case LazyLanguageParser.RULE_logicFactor:
+                return new LazyLanguageParser.LogicFactorContext(parent, -1);
+            case LazyLanguageParser.RULE_arithmetic:
+                return new LazyLanguageParser.ArithmeticContext(parent, -1);
+            case LazyLanguageParser.RULE_termOperator:
+                return new LazyLanguageParser.TermOperatorContext(parent, -1);
+            case LazyLanguageParser.RULE_term:
+                return new LazyLanguageParser.TermContext(parent, -1);
+            case LazyLanguageParser.RULE_factorOperator:
+                return new LazyLanguageParser.FactorOperatorContext(parent, -1);
+            case LazyLanguageParser.RULE_factor:
+                return new LazyLanguageParser.FactorContext(parent, -1);
+            case LazyLanguageParser.RULE_memberExpression:
+                return new LazyLanguageParser.MemberExpressionContext(parent, -1);
+            case LazyLanguageParser.RULE_parameterList:
+                return new LazyLanguageParser.ParameterListContext(parent, -1);
+            default:
+                throw new IOException("Corrupted snapshot: rule " + ruleIndex);
+        }
+    }
+
+    /* The labels of the grammar are fields that the generated parser assigns while parsing. */
+    private static void setLabels(ParserRuleContext ctx) {
+        if (ctx instanceof LazyLanguageParser.WhileStatementContext) {
+            LazyLanguageParser.WhileStatementContext whileCtx = (LazyLanguageParser.WhileStatementContext) ctx;
+            whileCtx.condition = whileCtx.expression();
+        } else if (ctx instanceof LazyLanguageParser.IfStatementContext) {
+            LazyLanguageParser.IfStatementContext ifCtx = (LazyLanguageParser.IfStatementContext) ctx;
+            ifCtx.condition = ifCtx.expression();
+            ifCtx.then = ifCtx.block(0);
+        } else if (ctx instanceof LazyLanguageParser.LogicFactorContext) {
+            LazyLanguageParser.LogicFactorContext logicCtx = (LazyLanguageParser.LogicFactorContext) ctx;
+            logicCtx.left = logicCtx.arithmetic(0);
+            logicCtx.right = logicCtx.arithmetic(1);
+            if (logicCtx.right != null) {
+                logicCtx.op = ((TerminalNode) logicCtx.getChild(1)).getSymbol();
+            }
+        }
+    }
+
+    private static Token firstToken(ParseTree tree) {
+        if (tree instanceof TerminalNode) {
+            return ((TerminalNode) tree).getSymbol();
+        }
+        return ((ParserRuleContext) tree).start;
+    }
+
+    private static Token lastToken(ParseTree tree) {
+        if (tree instanceof TerminalNode) {
+            return ((TerminalNode) tree).getSymbol();
+        }
+        return ((ParserRuleContext) tree).stop;
+    }
+
+    private static void writeVarInt(DataOutput output, int value) throws IOException {
+        int v = value;
+        while ((v & ~0x7f) != 0) {
+            output.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        output.writeByte(v);
+    }
+
+    private static int readVarInt(DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupted snapshot: malformed integer");
+    }
+}
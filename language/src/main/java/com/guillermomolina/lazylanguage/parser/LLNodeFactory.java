@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
 
 import com.guillermomolina.lazylanguage.LLLanguage;
 import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
@@ -56,13 +57,19 @@ import com.guillermomolina.lazylanguage.nodes.controlflow.LLContinueNode;
 import com.guillermomolina.lazylanguage.nodes.controlflow.LLDebuggerNode;
 import com.guillermomolina.lazylanguage.nodes.controlflow.LLFunctionBodyNode;
 import com.guillermomolina.lazylanguage.nodes.controlflow.LLIfNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLLazyBlockNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLLazyFunctionBodyNode;
 import com.guillermomolina.lazylanguage.nodes.controlflow.LLReturnNode;
 import com.guillermomolina.lazylanguage.nodes.controlflow.LLWhileNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLAddNodeGen;
 import com.guillermomolina.lazylanguage.nodes.expression.LLBigIntegerLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDecimalLiteralNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLDivNodeGen;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDoubleLiteralNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLEqualNodeGen;
 import com.guillermomolina.lazylanguage.nodes.expression.LLFunctionLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterOrEqualNodeGen;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterThanNodeGen;
 import com.guillermomolina.lazylanguage.nodes.expression.LLInvokeNode;
 import com.guillermomolina.lazylanguage.nodes.expression.LLLessOrEqualNodeGen;
 import com.guillermomolina.lazylanguage.nodes.expression.LLLessThanNodeGen;
@@ -84,6 +91,7 @@ import com.guillermomolina.lazylanguage.nodes.local.LLReadLocalVariableNodeGen;
 import com.guillermomolina.lazylanguage.nodes.local.LLWriteLocalVariableNode;
 import com.guillermomolina.lazylanguage.nodes.local.LLWriteLocalVariableNodeGen;
 import com.guillermomolina.lazylanguage.nodes.util.LLUnboxNodeGen;
+import com.guillermomolina.lazylanguage.runtime.LLDecimal;
 import com.oracle.truffle.api.RootCallTarget;
 import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.frame.FrameDescriptor;
@@ -107,26 +115,25 @@ import org.antlr.v4.runtime.tree.TerminalNode;
 public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
 
     /**
-     * Local variable names that are visible in the current block. Variables are not
-     * visible outside of their defining block, to prevent the usage of undefined
-     * variables. Because of that, we can decide during parsing if a name references
-     * a local variable or is a function name.
+     * Local variables declared in the current block. Variables are not visible
+     * outside of their defining block, to prevent the usage of undefined variables.
+     * Because of that, we can decide during parsing if a name references a local
+     * variable or is a function name. The names visible from the current block are
+     * kept in a single map of the factory, so entering a block does not copy them.
      */
     static class LexicalScope {
         protected final LexicalScope outer;
-        protected final Map<String, FrameSlot> locals;
+        protected final List<FrameSlot> locals;
+        protected final List<Integer> declaringStatements;
         protected final boolean inLoop;
         protected final List<LLStatementNode> statementNodes;
 
         LexicalScope(LexicalScope outer, boolean inLoop) {
             this.outer = outer;
             this.inLoop = inLoop;
-            this.locals = new HashMap<>();
+            this.locals = new ArrayList<>();
+            this.declaringStatements = new ArrayList<>();
             this.statementNodes = new ArrayList<>();
-
-            if (outer != null) {
-                locals.putAll(outer.locals);
-            }
         }
     }
 
@@ -142,10 +149,19 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
 
     /* State while parsing a block. */
     private LexicalScope lexicalScope;
+    private final Map<String, FrameSlot> visibleLocals = new HashMap<>();
     private final LLLanguage language;
+    private final boolean constantFolding;
+    private final boolean typeInference;
+    private final boolean lazyBranches;
+    private final boolean tailCalls;
 
     public LLNodeFactory(LLLanguage language, Source source) {
         this.language = language;
+        this.constantFolding = language.isConstantFolding();
+        this.typeInference = language.isTypeInference();
+        this.lazyBranches = language.isLazyBranches();
+        this.tailCalls = language.isTailCalls();
         this.source = source;
         this.allFunctions = new HashMap<>();
     }
@@ -175,11 +191,62 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
     }
 
     public void popScope() {
+        for (FrameSlot slot : lexicalScope.locals) {
+            visibleLocals.remove(slot.getIdentifier());
+        }
         lexicalScope = lexicalScope.outer;
     }
 
     @Override
     public Node visitFunction(LazyLanguageParser.FunctionContext ctx) {
+        final RootCallTarget callTarget = createFunction(ctx);
+        if (callTarget != null) {
+            allFunctions.put(callTarget.getRootNode().getName(), callTarget);
+        }
+        return null;
+    }
+
+    /**
+     * Creates the functions of a source unit on the common fork-join pool. Functions do not share
+     * any parser state, so each one is built by its own factory. The results are merged in source
+     * order, so a later function with the same name replaces an earlier one as in
+     * {@link #visitFunction sequential} parsing, and the first error in the source is reported.
+     */
+    public void createFunctionsInParallel(List<LazyLanguageParser.FunctionContext> functions) {
+        final List<ForkJoinTask<RootCallTarget>> tasks = new ArrayList<>(functions.size());
+        for (LazyLanguageParser.FunctionContext function : functions) {
+            tasks.add(ForkJoinTask.adapt(() -> new LLNodeFactory(language, source).createFunction(function)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        for (ForkJoinTask<RootCallTarget> task : tasks) {
+            final RootCallTarget callTarget = task.join();
+            if (callTarget != null) {
+                allFunctions.put(callTarget.getRootNode().getName(), callTarget);
+            }
+        }
+    }
+
+    private RootCallTarget createFunction(LazyLanguageParser.FunctionContext ctx) {
+        final FrameDescriptor descriptor = new FrameDescriptor();
+        final LLFunctionBodyNode functionBodyNode = createFunctionBody(ctx, descriptor);
+        if (functionBodyNode == null) {
+            return null;
+        }
+        SourceSection functionSrc = source.createSection(functionBodyNode.getSourceCharIndex(),
+                functionBodyNode.getSourceLength());
+        final LLRootNode rootNode = new LLRootNode(language, descriptor, functionBodyNode, functionSrc,
+                ctx.IDENTIFIER().getText());
+        rootNode.setCloningAllowed(true);
+        return Truffle.getRuntime().createCallTarget(rootNode);
+    }
+
+    /**
+     * Creates the body of a function, allocating its local variables in the given frame descriptor.
+     * Used directly when the body of a {@link LLLazyFunctionBodyNode lazily parsed} function is
+     * first executed.
+     */
+    public LLFunctionBodyNode createFunctionBody(LazyLanguageParser.FunctionContext ctx,
+            FrameDescriptor descriptor) {
         assert functionStartPos == 0;
         assert functionName == null;
         assert functionBodyStartPos == 0;
@@ -192,7 +259,7 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
         functionStartPos = nameToken.getStartIndex();
         functionName = nameToken.getText();
         functionBodyStartPos = bodyStartToken.getStartIndex();
-        frameDescriptor = new FrameDescriptor();
+        frameDescriptor = descriptor;
         pushScope(false);
 
         int parameterCount = 0;
@@ -206,17 +273,17 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
             }
         }
 
+        LLFunctionBodyNode functionBodyNode = null;
         final LLStatementNode methodBlock = (LLStatementNode) visit(ctx.block());
         if (methodBlock != null) {
             assert lexicalScope == null : "Wrong scoping of blocks in parser";
 
-            final LLFunctionBodyNode functionBodyNode = new LLFunctionBodyNode(methodBlock);
+            if (typeInference) {
+                LLTypeInference.optimize(methodBlock);
+            }
+            functionBodyNode = new LLFunctionBodyNode(methodBlock);
             final int bodyEndPos = methodBlock.getSourceEndIndex();
-            SourceSection functionSrc = source.createSection(functionStartPos, bodyEndPos - functionStartPos);
-            functionBodyNode.setSourceSection(functionSrc.getCharIndex(), functionSrc.getCharLength());
-            final LLRootNode rootNode = new LLRootNode(language, frameDescriptor, functionBodyNode, functionSrc,
-                    functionName);
-            allFunctions.put(functionName, Truffle.getRuntime().createCallTarget(rootNode));
+            functionBodyNode.setSourceSection(functionStartPos, bodyEndPos - functionStartPos);
         }
 
         functionStartPos = 0;
@@ -225,12 +292,26 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
         frameDescriptor = null;
         lexicalScope = null;
 
-        return null;
+        return functionBodyNode;
+    }
+
+    /**
+     * Creates a function whose body is parsed on its first invocation. The tokens from
+     * {@code nameToken} to {@code endToken} are the name, parameters and body of the function.
+     */
+    public void createLazyFunction(Token nameToken, Token endToken, LLLazyFunctionBodyNode.BodyParser bodyParser) {
+        final int startPos = nameToken.getStartIndex();
+        SourceSection functionSrc = source.createSection(startPos, endToken.getStopIndex() + 1 - startPos);
+        final LLRootNode rootNode = new LLRootNode(language, new FrameDescriptor(),
+                new LLLazyFunctionBodyNode(bodyParser), functionSrc, nameToken.getText());
+        rootNode.setCloningAllowed(true);
+        allFunctions.put(rootNode.getName(), Truffle.getRuntime().createCallTarget(rootNode));
     }
 
     @Override
     public Node visitBlock(LazyLanguageParser.BlockContext ctx) {
-        List<LLStatementNode> bodyNodes = lexicalScope.statementNodes;
+        final LexicalScope scope = lexicalScope;
+        List<LLStatementNode> bodyNodes = scope.statementNodes;
 
         for (LazyLanguageParser.StatementContext statement : ctx.statement()) {
             bodyNodes.add((LLStatementNode) visit(statement));
@@ -243,17 +324,39 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
         }
 
         List<LLStatementNode> flattenedNodes = new ArrayList<>(bodyNodes.size());
-        flattenBlocks(bodyNodes, flattenedNodes);
+        int[] flattenedIndexes = new int[bodyNodes.size()];
+        for (int i = 0; i < bodyNodes.size(); i++) {
+            flattenedIndexes[i] = flattenedNodes.size();
+            flattenBlocks(bodyNodes.subList(i, i + 1), flattenedNodes);
+        }
+        LLAstOptimizer.removeUnreachable(flattenedNodes);
         for (LLStatementNode statement : flattenedNodes) {
             if (statement.hasSource() && !isHaltInCondition(statement)) {
                 statement.addStatementTag();
             }
         }
-        LLBlockNode blockNode = new LLBlockNode(flattenedNodes.toArray(new LLStatementNode[flattenedNodes.size()]));
+
+        /* The scope table of the block: its locals and the statements that declare them. */
+        List<FrameSlot> locals = new ArrayList<>(scope.locals.size());
+        List<Integer> declaringStatements = new ArrayList<>(scope.locals.size());
+        for (int i = 0; i < scope.locals.size(); i++) {
+            int statement = flattenedIndexes[scope.declaringStatements.get(i)];
+            if (statement < flattenedNodes.size()) {
+                locals.add(scope.locals.get(i));
+                declaringStatements.add(statement);
+            }
+        }
+        LLBlockNode blockNode = new LLBlockNode(flattenedNodes.toArray(new LLStatementNode[flattenedNodes.size()]),
+                locals.toArray(new FrameSlot[locals.size()]),
+                declaringStatements.stream().mapToInt(Integer::intValue).toArray());
         setSourceFromContext(blockNode, ctx);
         return blockNode;
     }
 
+    private LLExpressionNode foldConstants(LLExpressionNode node) {
+        return constantFolding ? LLAstOptimizer.foldConstants(node) : node;
+    }
+
     private static boolean isHaltInCondition(LLStatementNode statement) {
         return (statement instanceof LLIfNode) || (statement instanceof LLWhileNode);
     }
@@ -401,10 +504,10 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
                     leftNode = LLLessOrEqualNodeGen.create(leftUnboxed, rightUnboxed);
                     break;
                 case ">":
-                    leftNode = LLLogicalNotNodeGen.create(LLLessOrEqualNodeGen.create(leftUnboxed, rightUnboxed));
+                    leftNode = LLGreaterThanNodeGen.create(leftUnboxed, rightUnboxed);
                     break;
                 case ">=":
-                    leftNode = LLLogicalNotNodeGen.create(LLLessThanNodeGen.create(leftUnboxed, rightUnboxed));
+                    leftNode = LLGreaterOrEqualNodeGen.create(leftUnboxed, rightUnboxed);
                     break;
                 case "==":
                     leftNode = LLEqualNodeGen.create(leftUnboxed, rightUnboxed);
@@ -417,6 +520,7 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
             }
             setSourceFromContext(leftNode, ctx);
             leftNode.addExpressionTag();
+            leftNode = foldConstants(leftNode);
         }
         return leftNode;
     }
@@ -442,6 +546,7 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
                 }
                 setSourceFromContext(leftNode, ctx);
                 leftNode.addExpressionTag();
+                leftNode = foldConstants(leftNode);
             }
         }
         return leftNode;
@@ -468,6 +573,7 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
                 }
                 setSourceFromContext(leftNode, ctx);
                 leftNode.addExpressionTag();
+                leftNode = foldConstants(leftNode);
             }
         }
         return leftNode;
@@ -486,6 +592,10 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
             return createStringLiteral(ctx.STRING_LITERAL().getSymbol(), true);
         } else if (ctx.NUMERIC_LITERAL() != null) {
             return createNumericLiteral(ctx.NUMERIC_LITERAL().getSymbol());
+        } else if (ctx.FLOAT_LITERAL() != null) {
+            return createFloatLiteral(ctx.FLOAT_LITERAL().getSymbol());
+        } else if (ctx.DECIMAL_LITERAL() != null) {
+            return createDecimalLiteral(ctx.DECIMAL_LITERAL().getSymbol());
         }
         int start = ctx.start.getStartIndex();
         int length = ctx.stop.getStopIndex() - start + 1;
@@ -541,13 +651,11 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
     public Node visitIfStatement(LazyLanguageParser.IfStatementContext ctx) {
         LLExpressionNode conditionNode = (LLExpressionNode) visit(ctx.condition);
 
-        pushScope(lexicalScope.inLoop);
-        LLStatementNode thenPartNode = (LLStatementNode) visit(ctx.then);
+        LLStatementNode thenPartNode = createBranch(ctx.then);
 
         LLStatementNode elsePartNode = null;
         if (ctx.ELSE() != null) {
-            pushScope(lexicalScope.inLoop);
-            elsePartNode = (LLStatementNode) visit(ctx.block(1));
+            elsePartNode = createBranch(ctx.block(1));
         }
 
         if (conditionNode == null || thenPartNode == null) {
@@ -560,12 +668,51 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
         return ifNode;
     }
 
+    private LLStatementNode createBranch(LazyLanguageParser.BlockContext ctx) {
+        if (!lazyBranches) {
+            pushScope(lexicalScope.inLoop);
+            return (LLStatementNode) visit(ctx);
+        }
+        /* Capture only the position of the block, not its parse tree or this factory. */
+        final LLLanguage blockLanguage = language;
+        final Source blockSource = source;
+        final int blockStart = ctx.getStart().getStartIndex();
+        final Map<String, FrameSlot> locals = new HashMap<>(visibleLocals);
+        final boolean inLoop = lexicalScope.inLoop;
+        final LLLazyBlockNode lazyBlock = new LLLazyBlockNode(descriptor -> new LLNodeFactory(blockLanguage, blockSource).createBlock(
+                LLParser.parseBlock(blockSource, blockStart), descriptor, locals, inLoop));
+        setSourceFromContext(lazyBlock, ctx);
+        return lazyBlock;
+    }
+
+    /**
+     * Creates a block of a function in the scope given by the visible local variables. Used when a
+     * {@link LLLazyBlockNode lazily built} branch is first executed.
+     */
+    public LLStatementNode createBlock(LazyLanguageParser.BlockContext ctx, FrameDescriptor descriptor,
+            Map<String, FrameSlot> locals, boolean inLoop) {
+        assert frameDescriptor == null;
+        assert lexicalScope == null;
+
+        frameDescriptor = descriptor;
+        visibleLocals.putAll(locals);
+        pushScope(inLoop);
+        final LLStatementNode blockNode = (LLStatementNode) visit(ctx);
+        if (blockNode == null) {
+            throw new LLParseError(source, ctx, "Malformed block");
+        }
+        return blockNode;
+    }
+
     @Override
     public Node visitReturnStatement(LazyLanguageParser.ReturnStatementContext ctx) {
         LLExpressionNode valueNode = null;
         if (ctx.expression() != null) {
             valueNode = (LLExpressionNode) visit(ctx.expression());
         }
+        if (tailCalls && valueNode instanceof LLInvokeNode) {
+            ((LLInvokeNode) valueNode).setTailCall();
+        }
         final LLReturnNode returnNode = new LLReturnNode(valueNode);
         setSourceFromContext(returnNode, ctx);
         return returnNode;
@@ -628,7 +775,11 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
 
         String name = ((LLStringLiteralNode) nameNode).executeGeneric(null);
         FrameSlot frameSlot = frameDescriptor.findOrAddFrameSlot(name, argumentIndex, FrameSlotKind.Illegal);
-        lexicalScope.locals.put(name, frameSlot);
+        if (visibleLocals.putIfAbsent(name, frameSlot) == null) {
+            /* The first write to a variable declares it in the current block. */
+            lexicalScope.locals.add(frameSlot);
+            lexicalScope.declaringStatements.add(lexicalScope.statementNodes.size());
+        }
         final LLExpressionNode result = LLWriteLocalVariableNodeGen.create(valueNode, frameSlot, nameNode);
 
         if (valueNode.hasSource()) {
@@ -663,7 +814,7 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
 
         String name = ((LLStringLiteralNode) nameNode).executeGeneric(null);
         final LLExpressionNode result;
-        final FrameSlot frameSlot = lexicalScope.locals.get(name);
+        final FrameSlot frameSlot = visibleLocals.get(name);
         if (frameSlot != null) {
             /* Read of a local variable. */
             result = LLReadLocalVariableNodeGen.create(frameSlot);
@@ -706,6 +857,22 @@ public class LLNodeFactory extends LazyLanguageParserBaseVisitor<Node> {
         return result;
     }
 
+    public LLExpressionNode createFloatLiteral(Token literalToken) {
+        final LLDoubleLiteralNode result = new LLDoubleLiteralNode(Double.parseDouble(literalToken.getText()));
+        srcFromToken(result, literalToken);
+        result.addExpressionTag();
+        return result;
+    }
+
+    public LLExpressionNode createDecimalLiteral(Token literalToken) {
+        /* Remove the m suffix. */
+        String literal = literalToken.getText();
+        final LLDecimalLiteralNode result = new LLDecimalLiteralNode(LLDecimal.parse(literal.substring(0, literal.length() - 1)));
+        srcFromToken(result, literalToken);
+        result.addExpressionTag();
+        return result;
+    }
+
     public LLExpressionNode createParenExpression(LLExpressionNode expressionNode, int start, int length) {
         if (expressionNode == null) {
             return null;
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.parser;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.guillermomolina.lazylanguage.LLLanguage;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.source.Source;
+
+/**
+ * Language-wide cache of parsed Lazy sources. {@link LLLanguage} uses a shared context policy, so
+ * the trees built by the {@link LLParser} do not depend on a particular context and can be reused
+ * by every context created from the same engine. A source is identified by its characters, its name
+ * and the argument names of the parsing request, so evaluating the same script again in any
+ * context skips lexing, parsing and node creation entirely.
+ * <p>
+ * The cache is bounded: when more than {@link #getMaxSize() maxSize} sources have been parsed, the
+ * least recently used entry is evicted. A size of {@code 0} disables caching.
+ */
+public final class LLParseCache {
+
+    private final int maxSize;
+    private final Map<Key, Map<String, RootCallTarget>> entries;
+
+    public LLParseCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<Key, Map<String, RootCallTarget>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 2811578423398327610L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Map<String, RootCallTarget>> eldest) {
+                return size() > LLParseCache.this.maxSize;
+            }
+        };
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the functions previously parsed from a source with the same characters, name and
+     * argument names, or {@code null} if the source is not cached.
+     */
+    public Map<String, RootCallTarget> get(Source source, List<String> argumentNames) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        Key key = new Key(source, argumentNames);
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    /**
+     * Caches the functions parsed from the given source. The returned map is the one that is
+     * stored, and must not be modified by the caller.
+     */
+    public Map<String, RootCallTarget> put(Source source, List<String> argumentNames, Map<String, RootCallTarget> functions) {
+        Map<String, RootCallTarget> result = Collections.unmodifiableMap(functions);
+        if (maxSize <= 0) {
+            return result;
+        }
+        Key key = new Key(source, argumentNames);
+        synchronized (entries) {
+            Map<String, RootCallTarget> existing = entries.putIfAbsent(key, result);
+            /* Another context parsed the same source concurrently, keep the first result. */
+            return existing != null ? existing : result;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Identifies a source by the hash of its characters, their length, its name and the argument
+     * names. The characters are referenced, not copied, and are only compared when the hashes and
+     * lengths match, so a cache hit costs one pass over the source and no allocation of its text.
+     */
+    private static final class Key {
+        private final CharSequence characters;
+        private final String name;
+        private final List<String> argumentNames;
+        private final int hash;
+
+        Key(Source source, List<String> argumentNames) {
+            this.characters = source.getCharacters();
+            this.name = source.getName();
+            this.argumentNames = argumentNames;
+            int h = hashCharacters(characters);
+            h = 31 * h + characters.length();
+            h = 31 * h + (name == null ? 0 : name.hashCode());
+            h = 31 * h + argumentNames.hashCode();
+            this.hash = h;
+        }
+
+        /** Same value as {@link String#hashCode()}, which strings cache. */
+        private static int hashCharacters(CharSequence characters) {
+            if (characters instanceof String) {
+                return characters.hashCode();
+            }
+            int h = 0;
+            for (int i = 0; i < characters.length(); i++) {
+                h = 31 * h + characters.charAt(i);
+            }
+            return h;
+        }
+
+        private static boolean sameCharacters(CharSequence a, CharSequence b) {
+            if (a == b) {
+                return true;
+            }
+            if (a instanceof String) {
+                return ((String) a).contentEquals(b);
+            }
+            for (int i = 0; i < a.length(); i++) {
+                if (a.charAt(i) != b.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && characters.length() == other.characters.length() && argumentNames.equals(other.argumentNames) &&
+                            (name == null ? other.name == null : name.equals(other.name)) && sameCharacters(characters, other.characters);
+        }
+    }
+}
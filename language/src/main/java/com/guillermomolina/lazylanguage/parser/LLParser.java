@@ -1,37 +1,214 @@
 package com.guillermomolina.lazylanguage.parser;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import com.guillermomolina.lazylanguage.LLLanguage;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLFunctionBodyNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLLazyBlockNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLLazyFunctionBodyNode;
 import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.frame.FrameDescriptor;
 import com.oracle.truffle.api.source.Source;
 
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.BaseErrorListener;
-import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 public class LLParser {
     private final LLNodeFactory factory;
 
     public LLParser(final LLLanguage language, final Source source) {
-        LazyLanguageLexer lexer = new LazyLanguageLexer(CharStreams.fromString(source.getCharacters().toString()));
-        LazyLanguageParser parser = new LazyLanguageParser(new CommonTokenStream(lexer));
+        this(language, source, false, false, null);
+    }
+
+    /**
+     * Parses a source unit. If {@code lazyFunctionBodies} is set, only the function headers are
+     * parsed here and the body of each function is parsed when it is first executed, see
+     * {@link LLLazyFunctionBodyNode}. Otherwise, if {@code parallel} is set, the trees of the
+     * functions are built {@link LLNodeFactory#createFunctionsInParallel in parallel}, and if
+     * {@code snapshot} is not {@code null}, the parse trees of the functions are added to it.
+     */
+    public LLParser(final LLLanguage language, final Source source, boolean lazyFunctionBodies, boolean parallel,
+            LLAstSnapshot snapshot) {
+        LazyLanguageLexer lexer = new LazyLanguageLexer(new LLSourceCharStream(source));
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
         lexer.removeErrorListeners();
-        parser.removeErrorListeners();
         BailoutErrorListener listener = new BailoutErrorListener(source);
         lexer.addErrorListener(listener);
-        parser.addErrorListener(listener);
         factory = new LLNodeFactory(language, source);
-        factory.visit(parser.lazylanguage());
+
+        if (lazyFunctionBodies) {
+            tokens.fill();
+            List<FunctionHeader> headers = scanFunctionHeaders(tokens.getTokens());
+            if (headers != null) {
+                LazyBodies bodies = new LazyBodies(language, source, tokens);
+                for (FunctionHeader header : headers) {
+                    factory.createLazyFunction(header.name, header.end,
+                            descriptor -> bodies.parse(header.function.getTokenIndex(), descriptor));
+                }
+                return;
+            }
+            /* Not a sequence of well formed functions: let the full parse report the error. */
+        }
+
+        /*
+         * Functions are turned into nodes as soon as they are parsed, so that the parse tree of a
+         * function can be collected before the next one is parsed.
+         */
+        parseTwoStage(new LazyLanguageParser(tokens), listener, 0, parser -> {
+            List<LazyLanguageParser.FunctionContext> functions = new ArrayList<>();
+            if (snapshot != null) {
+                snapshot.clear();
+            }
+            do {
+                LazyLanguageParser.FunctionContext function = parser.function();
+                if (snapshot != null) {
+                    snapshot.add(function);
+                }
+                if (parallel) {
+                    functions.add(function);
+                } else {
+                    factory.visit(function);
+                }
+            } while (parser.getCurrentToken().getType() != Token.EOF);
+            if (parallel) {
+                factory.createFunctionsInParallel(functions);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Parses {@code rule} starting at the token {@code startIndex}, first with SLL prediction, which
+     * is faster but may fail on valid input, and with full LL prediction only if that fails. Syntax
+     * errors are reported to {@code listener} by the second stage only.
+     */
+    private static <T> T parseTwoStage(LazyLanguageParser parser, BaseErrorListener listener, int startIndex,
+            Function<LazyLanguageParser, T> rule) {
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.getTokenStream().seek(startIndex);
+        try {
+            return rule.apply(parser);
+        } catch (ParseCancellationException e) {
+            parser.reset();
+            parser.getTokenStream().seek(startIndex);
+            parser.addErrorListener(listener);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return rule.apply(parser);
+        }
+    }
+
+    /**
+     * Parses the block that starts at the character {@code startIndex} of {@code source}, lexing
+     * the source from there. A {@link LLLazyBlockNode lazily built} branch keeps only the position
+     * of its block, so it does not keep the parse tree of its function alive.
+     */
+    static LazyLanguageParser.BlockContext parseBlock(Source source, int startIndex) {
+        LLSourceCharStream characters = new LLSourceCharStream(source);
+        characters.seek(startIndex);
+        LazyLanguageLexer lexer = new LazyLanguageLexer(characters);
+        lexer.setLine(source.getLineNumber(startIndex));
+        lexer.setCharPositionInLine(source.getColumnNumber(startIndex) - 1);
+        lexer.removeErrorListeners();
+        BailoutErrorListener listener = new BailoutErrorListener(source);
+        lexer.addErrorListener(listener);
+        return parseTwoStage(new LazyLanguageParser(new CommonTokenStream(lexer)), listener, 0, LazyLanguageParser::block);
     }
 
     public Map<String, RootCallTarget> getAllFunctions() {
         return factory.getAllFunctions();
     }
 
+    /**
+     * Finds the functions of a source unit by matching the braces of their bodies. Returns
+     * {@code null} if the tokens are not a non-empty sequence of
+     * {@code function name(parameters) { ... }}.
+     */
+    private static List<FunctionHeader> scanFunctionHeaders(List<Token> tokens) {
+        List<FunctionHeader> headers = new ArrayList<>();
+        int i = 0;
+        while (tokens.get(i).getType() != Token.EOF) {
+            Token function = tokens.get(i++);
+            Token name = tokens.get(i++);
+            if (function.getType() != LazyLanguageLexer.FUNCTION || name.getType() != LazyLanguageLexer.IDENTIFIER ||
+                    tokens.get(i++).getType() != LazyLanguageLexer.LPAREN) {
+                return null;
+            }
+            if (tokens.get(i).getType() == LazyLanguageLexer.IDENTIFIER) {
+                i++;
+                while (tokens.get(i).getType() == LazyLanguageLexer.COMMA) {
+                    if (tokens.get(i + 1).getType() != LazyLanguageLexer.IDENTIFIER) {
+                        return null;
+                    }
+                    i += 2;
+                }
+            }
+            if (tokens.get(i++).getType() != LazyLanguageLexer.RPAREN
+                    || tokens.get(i).getType() != LazyLanguageLexer.LCURLY) {
+                return null;
+            }
+            int depth = 0;
+            do {
+                int type = tokens.get(i++).getType();
+                if (type == LazyLanguageLexer.LCURLY) {
+                    depth++;
+                } else if (type == LazyLanguageLexer.RCURLY) {
+                    depth--;
+                } else if (type == Token.EOF) {
+                    return null;
+                }
+            } while (depth > 0);
+            headers.add(new FunctionHeader(function, name, tokens.get(i - 1)));
+        }
+        return headers.isEmpty() ? null : headers;
+    }
+
+    private static final class FunctionHeader {
+        final Token function;
+        final Token name;
+        final Token end;
+
+        FunctionHeader(Token function, Token name, Token end) {
+            this.function = function;
+            this.name = name;
+            this.end = end;
+        }
+    }
+
+    /**
+     * The tokens of a lazily parsed source unit. Parsing is synchronized because the token stream
+     * keeps the position of the parser.
+     */
+    private static final class LazyBodies {
+        private final LLLanguage language;
+        private final Source source;
+        private final CommonTokenStream tokens;
+
+        LazyBodies(LLLanguage language, Source source, CommonTokenStream tokens) {
+            this.language = language;
+            this.source = source;
+            this.tokens = tokens;
+        }
+
+        synchronized LLFunctionBodyNode parse(int functionTokenIndex, FrameDescriptor descriptor) {
+            LazyLanguageParser.FunctionContext function = parseTwoStage(new LazyLanguageParser(tokens),
+                    new BailoutErrorListener(source), functionTokenIndex, LazyLanguageParser::function);
+            return new LLNodeFactory(language, source).createFunctionBody(function, descriptor);
+        }
+    }
+
     private static final class BailoutErrorListener extends BaseErrorListener {
         private final Source source;
 
@@ -42,8 +219,11 @@ public class LLParser {
         @Override
         public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
                 String msg, RecognitionException e) {
-            Token token = (Token) offendingSymbol;
-            throw new LLParseError(source, token, msg);
+            if (offendingSymbol instanceof Token) {
+                throw new LLParseError(source, (Token) offendingSymbol, msg);
+            }
+            /* Lexer errors have no offending token. */
+            throw new LLParseError(source, line, charPositionInLine + 1, 1, msg);
         }
     }
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.parser;
+
+import com.oracle.truffle.api.source.Source;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * A {@link CharStream} that lexes the characters of a {@link Source} in place, instead of copying
+ * them into a code point buffer. Token indices are therefore UTF-16 indices, which is what
+ * {@link Source#createSection(int, int)} expects.
+ */
+final class LLSourceCharStream implements CharStream {
+    private final CharSequence characters;
+    private final String name;
+    private int index;
+
+    LLSourceCharStream(Source source) {
+        this.characters = source.getCharacters();
+        this.name = source.getName();
+    }
+
+    @Override
+    public void consume() {
+        if (index >= characters.length()) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        index++;
+    }
+
+    @Override
+    public int LA(int i) {
+        int offset;
+        if (i > 0) {
+            offset = index + i - 1;
+        } else if (i < 0) {
+            offset = index + i;
+        } else {
+            return 0;
+        }
+        if (offset < 0 || offset >= characters.length()) {
+            return IntStream.EOF;
+        }
+        return characters.charAt(offset);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public void seek(int newIndex) {
+        index = newIndex;
+    }
+
+    @Override
+    public int size() {
+        return characters.length();
+    }
+
+    @Override
+    public String getSourceName() {
+        return name == null || name.isEmpty() ? IntStream.UNKNOWN_SOURCE_NAME : name;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = Math.min(interval.a, characters.length());
+        int length = Math.min(interval.b - interval.a + 1, characters.length() - start);
+        return characters.subSequence(start, start + Math.max(length, 0)).toString();
+    }
+}
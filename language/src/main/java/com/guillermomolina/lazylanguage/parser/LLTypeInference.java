@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.guillermomolina.lazylanguage.nodes.LLExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.LLStatementNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLLazyBlockNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLAddNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLBigIntegerLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLBooleanLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDecimalLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDivNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLDoubleLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLFunctionLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterOrEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLGreaterThanNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLessOrEqualNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLessThanNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLogicalNotNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLLongLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLMulNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLParenExpressionNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLShortCircuitNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLStringLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLSubNode;
+import com.guillermomolina.lazylanguage.nodes.local.LLReadLocalVariableNode;
+import com.guillermomolina.lazylanguage.nodes.local.LLWriteLocalVariableNode;
+import com.guillermomolina.lazylanguage.nodes.util.LLUnboxNode;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeVisitor;
+
+/**
+ * Infers the static types of the expressions and local variables of a function, and removes the
+ * {@link LLUnboxNode unbox} nodes around operands that can only produce Lazy values.
+ * <p>
+ * The inference is flow insensitive: the type of a local variable is the union of the types of all
+ * the values written to it in the function, computed as a fixed point since a written value may
+ * read other variables. A variable can only be read after a write to it in an enclosing block, so
+ * a read always sees one of those values. Arguments, calls and properties may hold foreign values
+ * and have no static type, and so do all the variables of a function with
+ * {@link LLLazyBlockNode lazily built} branches, whose writes are not known yet.
+ */
+final class LLTypeInference {
+
+    enum Type {
+        NUMBER,
+        BOOLEAN,
+        STRING,
+        /* Any Lazy value. */
+        VALUE,
+        /* Any value, including foreign values that need unboxing. */
+        ANY;
+
+        Type join(Type other) {
+            if (other == null || other == this) {
+                return this;
+            }
+            return this == ANY || other == ANY ? ANY : VALUE;
+        }
+    }
+
+    /* The types of the local variables, missing while no write to them has been typed. */
+    private final Map<FrameSlot, Type> localTypes = new HashMap<>();
+
+    /* Whether some branches are built lazily, so not all the writes are known. */
+    private boolean hasLazyBlocks;
+
+    private LLTypeInference() {
+    }
+
+    /**
+     * Infers the types of the function body {@code body} and removes its redundant unbox nodes.
+     */
+    static void optimize(LLStatementNode body) {
+        body.adoptChildren();
+        LLTypeInference inference = new LLTypeInference();
+        List<LLWriteLocalVariableNode> writes = new ArrayList<>();
+        List<LLUnboxNode> unboxes = new ArrayList<>();
+        body.accept(new NodeVisitor() {
+            @Override
+            public boolean visit(Node node) {
+                if (node instanceof LLWriteLocalVariableNode) {
+                    writes.add((LLWriteLocalVariableNode) node);
+                } else if (node instanceof LLUnboxNode) {
+                    unboxes.add((LLUnboxNode) node);
+                } else if (node instanceof LLLazyBlockNode) {
+                    inference.hasLazyBlocks = true;
+                }
+                return true;
+            }
+        });
+
+        boolean changed;
+        do {
+            changed = false;
+            for (LLWriteLocalVariableNode write : writes) {
+                Type type = inference.typeOf(write.getValueNode());
+                if (type != null) {
+                    Type old = inference.localTypes.get(write.getSlot());
+                    Type joined = type.join(old);
+                    if (joined != old) {
+                        inference.localTypes.put(write.getSlot(), joined);
+                        changed = true;
+                    }
+                }
+            }
+        } while (changed);
+
+        for (LLUnboxNode unbox : unboxes) {
+            Type type = inference.typeOf(unbox.getValueNode());
+            if (type != null && type != Type.ANY) {
+                unbox.replace(unbox.getValueNode(), "operand is never a foreign value");
+            }
+        }
+    }
+
+    /**
+     * Returns the static type of {@code node}, or {@code null} if it reads a variable whose type is
+     * not known yet.
+     */
+    private Type typeOf(LLExpressionNode node) {
+        if (node instanceof LLLongLiteralNode || node instanceof LLDoubleLiteralNode || node instanceof LLDecimalLiteralNode || node instanceof LLBigIntegerLiteralNode) {
+            return Type.NUMBER;
+        } else if (node instanceof LLStringLiteralNode) {
+            return Type.STRING;
+        } else if (node instanceof LLBooleanLiteralNode || node instanceof LLShortCircuitNode ||
+                        node instanceof LLLogicalNotNode || node instanceof LLEqualNode ||
+                        node instanceof LLLessThanNode || node instanceof LLLessOrEqualNode ||
+                        node instanceof LLGreaterThanNode || node instanceof LLGreaterOrEqualNode) {
+            return Type.BOOLEAN;
+        } else if (node instanceof LLSubNode || node instanceof LLMulNode || node instanceof LLDivNode) {
+            return Type.NUMBER;
+        } else if (node instanceof LLAddNode) {
+            return typeOfAdd(typeOf(((LLAddNode) node).getLeftNode()), typeOf(((LLAddNode) node).getRightNode()));
+        } else if (node instanceof LLFunctionLiteralNode) {
+            return Type.VALUE;
+        } else if (node instanceof LLParenExpressionNode) {
+            return typeOf(((LLParenExpressionNode) node).getExpression());
+        } else if (node instanceof LLUnboxNode) {
+            return typeOf(((LLUnboxNode) node).getValueNode());
+        } else if (node instanceof LLWriteLocalVariableNode) {
+            return typeOf(((LLWriteLocalVariableNode) node).getValueNode());
+        } else if (node instanceof LLReadLocalVariableNode) {
+            return hasLazyBlocks ? Type.ANY : localTypes.get(((LLReadLocalVariableNode) node).getSlot());
+        }
+        return Type.ANY;
+    }
+
+    private static Type typeOfAdd(Type left, Type right) {
+        if (left == null || right == null) {
+            return null;
+        } else if (left == Type.STRING || right == Type.STRING) {
+            return Type.STRING;
+        } else if (left == Type.NUMBER && right == Type.NUMBER) {
+            return Type.NUMBER;
+        }
+        return Type.VALUE;
+    }
+}
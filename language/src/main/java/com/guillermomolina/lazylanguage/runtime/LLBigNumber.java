@@ -41,6 +41,7 @@
 package com.guillermomolina.lazylanguage.runtime;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 import com.guillermomolina.lazylanguage.LLLanguage;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
@@ -51,11 +52,27 @@ import com.oracle.truffle.api.interop.UnsupportedMessageException;
 import com.oracle.truffle.api.library.ExportLibrary;
 import com.oracle.truffle.api.library.ExportMessage;
 
+/**
+ * The numbers of Lazy that do not fit into a {@code long}. A number has one of three
+ * representations:
+ * <ul>
+ * <li>A 128-bit two's complement value in {@link #high} and {@link #low}. The results of
+ * {@code long} operations that overflow, and the numbers just above them, are computed in it
+ * without allocating a {@link BigInteger}.</li>
+ * <li>A {@link BigInteger}, for all other numbers.</li>
+ * <li>The magnitude {@link #words} of an accumulation, which the operations of a statement like
+ * {@code x = x * i} update in place while no other variable {@link #share() shares} the number.
+ * Factorial-like loops therefore do not allocate a new number on every iteration.</li>
+ * </ul>
+ * Operations return {@link #normalize normalized} values: a result that fits into a {@code long}
+ * is a {@code long}.
+ */
 @ExportLibrary(InteropLibrary.class)
 public final class LLBigNumber implements TruffleObject, Comparable<LLBigNumber> {
 
     private static final long LONG_MAX_SAFE_DOUBLE = 9007199254740991L; // 2 ** 53 - 1
     private static final int INT_MAX_SAFE_FLOAT = 16777215; // 2 ** 24 - 1
+    private static final long WORD_MASK = 0xFFFFFFFFL;
 
     private static boolean inSafeDoubleRange(long l) {
         return l >= -LONG_MAX_SAFE_DOUBLE && l <= LONG_MAX_SAFE_DOUBLE;
@@ -65,43 +82,374 @@ public final class LLBigNumber implements TruffleObject, Comparable<LLBigNumber>
         return i >= -INT_MAX_SAFE_FLOAT && i <= INT_MAX_SAFE_FLOAT;
     }
 
-    private final BigInteger value;
+    /** The value, computed on demand for the other representations. */
+    private BigInteger value;
+
+    /** Whether the number is represented by {@link #high} and {@link #low}. */
+    private final boolean wide;
+    private final long high;
+    private final long low;
+
+    /** The magnitude of an accumulation, in little-endian 32-bit words, and its sign. */
+    private int[] words;
+    private int wordCount;
+    private int signum;
+
+    /** Whether other values may reference this number. Only accumulations start unshared. */
+    private boolean shared = true;
 
     public LLBigNumber(BigInteger value) {
         this.value = value;
+        this.wide = false;
+        this.high = 0;
+        this.low = 0;
     }
 
     public LLBigNumber(long value) {
-        this.value = BigInteger.valueOf(value);
+        this(value >> 63, value);
+    }
+
+    private LLBigNumber(long high, long low) {
+        this.wide = true;
+        this.high = high;
+        this.low = low;
+    }
+
+    private LLBigNumber(int[] words, int wordCount, int signum) {
+        this.wide = false;
+        this.high = 0;
+        this.low = 0;
+        this.words = words;
+        this.wordCount = wordCount;
+        this.signum = signum;
+        this.shared = false;
     }
 
+    @TruffleBoundary
     public BigInteger getValue() {
-        return value;
+        BigInteger result = value;
+        if (result == null) {
+            if (wide) {
+                byte[] bytes = new byte[16];
+                for (int i = 0; i < 8; i++) {
+                    bytes[i] = (byte) (high >>> (56 - i * 8));
+                    bytes[i + 8] = (byte) (low >>> (56 - i * 8));
+                }
+                result = new BigInteger(bytes);
+            } else {
+                byte[] bytes = new byte[wordCount * 4];
+                for (int i = 0; i < wordCount; i++) {
+                    int word = words[wordCount - 1 - i];
+                    bytes[i * 4] = (byte) (word >>> 24);
+                    bytes[i * 4 + 1] = (byte) (word >>> 16);
+                    bytes[i * 4 + 2] = (byte) (word >>> 8);
+                    bytes[i * 4 + 3] = (byte) word;
+                }
+                result = new BigInteger(signum, bytes);
+            }
+            if (shared) {
+                value = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Lazy value of a number: a {@code long} if it fits into one, so that operations on
+     * it take the fast path again, and a {@link LLBigNumber} otherwise.
+     */
+    @TruffleBoundary
+    public static Object normalize(BigInteger value) {
+        if (value.bitLength() < Long.SIZE) {
+            return value.longValue();
+        }
+        return new LLBigNumber(value);
+    }
+
+    private static Object normalize(long high, long low) {
+        if (high == low >> 63) {
+            return low;
+        }
+        return new LLBigNumber(high, low);
+    }
+
+    /**
+     * Marks this number as referenced by more than the variable it was read from, which ends the
+     * in-place updates of an accumulation.
+     */
+    public void share() {
+        shared = true;
+    }
+
+    /** Adds two {@code long} values; an overflowing sum is a 128-bit number. */
+    public static Object add(long left, long right) {
+        long result = left + right;
+        long carry = Long.compareUnsigned(result, left) < 0 ? 1 : 0;
+        return normalize((left >> 63) + (right >> 63) + carry, result);
+    }
+
+    public static Object subtract(long left, long right) {
+        long result = left - right;
+        long borrow = Long.compareUnsigned(left, right) < 0 ? 1 : 0;
+        return normalize((left >> 63) - (right >> 63) - borrow, result);
+    }
+
+    public static Object multiply(long left, long right) {
+        return normalize(Math.multiplyHigh(left, right), left * right);
+    }
+
+    public Object add(long right) {
+        if (wide) {
+            return add128(high, low, right >> 63, right);
+        }
+        return addBig(getValue(), BigInteger.valueOf(right));
+    }
+
+    public Object add(LLBigNumber right) {
+        if (wide && right.wide) {
+            return add128(high, low, right.high, right.low);
+        }
+        return addBig(getValue(), right.getValue());
+    }
+
+    public Object subtract(long right) {
+        if (wide) {
+            return subtract128(high, low, right >> 63, right);
+        }
+        return subtractBig(getValue(), BigInteger.valueOf(right));
+    }
+
+    public static Object subtract(long left, LLBigNumber right) {
+        if (right.wide) {
+            return subtract128(left >> 63, left, right.high, right.low);
+        }
+        return subtractBig(BigInteger.valueOf(left), right.getValue());
+    }
+
+    public Object subtract(LLBigNumber right) {
+        if (wide && right.wide) {
+            return subtract128(high, low, right.high, right.low);
+        }
+        return subtractBig(getValue(), right.getValue());
+    }
+
+    @TruffleBoundary
+    public Object multiply(long right) {
+        return normalize(getValue().multiply(BigInteger.valueOf(right)));
+    }
+
+    @TruffleBoundary
+    public Object multiply(LLBigNumber right) {
+        return normalize(getValue().multiply(right.getValue()));
+    }
+
+    private static Object add128(long leftHigh, long leftLow, long rightHigh, long rightLow) {
+        long resultLow = leftLow + rightLow;
+        long carry = Long.compareUnsigned(resultLow, leftLow) < 0 ? 1 : 0;
+        long resultHigh = leftHigh + rightHigh + carry;
+        if (((leftHigh ^ resultHigh) & (rightHigh ^ resultHigh)) < 0) {
+            /* The sum needs more than 128 bits. */
+            return addBig(new LLBigNumber(leftHigh, leftLow).getValue(), new LLBigNumber(rightHigh, rightLow).getValue());
+        }
+        return normalize(resultHigh, resultLow);
+    }
+
+    private static Object subtract128(long leftHigh, long leftLow, long rightHigh, long rightLow) {
+        long resultLow = leftLow - rightLow;
+        long borrow = Long.compareUnsigned(leftLow, rightLow) < 0 ? 1 : 0;
+        long resultHigh = leftHigh - rightHigh - borrow;
+        if (((leftHigh ^ rightHigh) & (leftHigh ^ resultHigh)) < 0) {
+            return subtractBig(new LLBigNumber(leftHigh, leftLow).getValue(), new LLBigNumber(rightHigh, rightLow).getValue());
+        }
+        return normalize(resultHigh, resultLow);
+    }
+
+    @TruffleBoundary
+    private static Object addBig(BigInteger left, BigInteger right) {
+        return normalize(left.add(right));
+    }
+
+    @TruffleBoundary
+    private static Object subtractBig(BigInteger left, BigInteger right) {
+        return normalize(left.subtract(right));
+    }
+
+    /**
+     * Returns this number plus {@code right}, updating this number in place if it is an
+     * accumulation that is not shared. Called by the operation of an accumulation statement, whose
+     * result replaces this number in its variable.
+     */
+    @TruffleBoundary
+    public Object addAccumulate(long right) {
+        Object result = accumulate(Long.signum(right), right < 0 ? -right : right);
+        return result != null ? result : add(right);
+    }
+
+    @TruffleBoundary
+    public Object subtractAccumulate(long right) {
+        Object result = accumulate(-Long.signum(right), right < 0 ? -right : right);
+        return result != null ? result : subtract(right);
+    }
+
+    @TruffleBoundary
+    public Object multiplyAccumulate(long right) {
+        long magnitude = right < 0 ? -right : right;
+        if (right == 0 || (magnitude >>> 32) != 0) {
+            return multiply(right);
+        }
+        LLBigNumber accumulation = toAccumulation();
+        accumulation.multiplyMagnitude((int) magnitude);
+        if (right < 0) {
+            accumulation.signum = -accumulation.signum;
+        }
+        return accumulation.normalizeAccumulation();
+    }
+
+    /**
+     * Adds a number given by its sign and unsigned magnitude to the accumulation, or returns
+     * {@code null} if the sign of the result differs, which only happens for small numbers.
+     */
+    private Object accumulate(int rightSignum, long rightMagnitude) {
+        if (rightSignum == 0) {
+            return this;
+        }
+        LLBigNumber accumulation = toAccumulation();
+        if (accumulation.signum == rightSignum) {
+            accumulation.addMagnitude(rightMagnitude);
+        } else if (!accumulation.subtractMagnitude(rightMagnitude)) {
+            return null;
+        }
+        return accumulation.normalizeAccumulation();
+    }
+
+    /** Returns this number if it is an unshared accumulation, or a new accumulation of its value. */
+    private LLBigNumber toAccumulation() {
+        if (!shared) {
+            return this;
+        }
+        BigInteger bigValue = getValue();
+        byte[] bytes = bigValue.abs().toByteArray();
+        int count = (bytes.length + 3) / 4;
+        int[] newWords = new int[count * 2 + 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int shift = i % 4 * 8;
+            newWords[i / 4] |= (bytes[bytes.length - 1 - i] & 0xFF) << shift;
+        }
+        LLBigNumber accumulation = new LLBigNumber(newWords, count, bigValue.signum());
+        accumulation.trim();
+        return accumulation;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > words.length) {
+            words = Arrays.copyOf(words, count * 2);
+        }
+    }
+
+    private void multiplyMagnitude(int factor) {
+        long factorValue = factor & WORD_MASK;
+        long carry = 0;
+        for (int i = 0; i < wordCount; i++) {
+            long product = (words[i] & WORD_MASK) * factorValue + carry;
+            words[i] = (int) product;
+            carry = product >>> 32;
+        }
+        if (carry != 0) {
+            ensureCapacity(wordCount + 1);
+            words[wordCount++] = (int) carry;
+        }
+    }
+
+    private void addMagnitude(long magnitude) {
+        ensureCapacity(Math.max(wordCount, 2) + 1);
+        long carry = 0;
+        for (int i = 0; i < wordCount || i < 2 || carry != 0; i++) {
+            long sum = (i < wordCount ? words[i] & WORD_MASK : 0) + (i < 2 ? (magnitude >>> (i * 32)) & WORD_MASK : 0) + carry;
+            words[i] = (int) sum;
+            carry = sum >>> 32;
+            if (i >= wordCount) {
+                wordCount = i + 1;
+            }
+        }
+        trim();
+    }
+
+    /** Subtracts from the magnitude, unless the result would be negative. */
+    private boolean subtractMagnitude(long magnitude) {
+        if (wordCount <= 2) {
+            long current = (wordCount > 1 ? (words[1] & WORD_MASK) << 32 : 0) | (wordCount > 0 ? words[0] & WORD_MASK : 0);
+            if (Long.compareUnsigned(current, magnitude) < 0) {
+                return false;
+            }
+        }
+        long borrow = 0;
+        for (int i = 0; i < wordCount && (i < 2 || borrow != 0); i++) {
+            long difference = (words[i] & WORD_MASK) - (i < 2 ? (magnitude >>> (i * 32)) & WORD_MASK : 0) - borrow;
+            words[i] = (int) difference;
+            borrow = difference < 0 ? 1 : 0;
+        }
+        trim();
+        return true;
+    }
+
+    private void trim() {
+        while (wordCount > 0 && words[wordCount - 1] == 0) {
+            wordCount--;
+        }
+    }
+
+    private Object normalizeAccumulation() {
+        if (wordCount <= 2) {
+            long magnitude = (wordCount > 1 ? (words[1] & WORD_MASK) << 32 : 0) | (wordCount > 0 ? words[0] & WORD_MASK : 0);
+            if (magnitude >= 0 || (signum < 0 && magnitude == Long.MIN_VALUE)) {
+                return signum < 0 ? -magnitude : magnitude;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the {@code double} value closest to this number, for the operations that mix big
+     * numbers with floating point numbers.
+     */
+    @TruffleBoundary
+    public double doubleValue() {
+        if (wide && high == low >> 63) {
+            return low;
+        }
+        return getValue().doubleValue();
     }
 
     @TruffleBoundary
     public int compareTo(LLBigNumber o) {
-        return value.compareTo(o.getValue());
+        if (wide && o.wide) {
+            return high != o.high ? Long.compare(high, o.high) : Long.compareUnsigned(low, o.low);
+        }
+        return getValue().compareTo(o.getValue());
     }
 
     @Override
     @TruffleBoundary
     public String toString() {
-        return value.toString();
+        return getValue().toString();
     }
 
     @Override
     @TruffleBoundary
     public boolean equals(Object obj) {
         if (obj instanceof LLBigNumber) {
-            return value.equals(((LLBigNumber) obj).getValue());
+            LLBigNumber other = (LLBigNumber) obj;
+            if (wide && other.wide) {
+                return high == other.high && low == other.low;
+            }
+            return getValue().equals(other.getValue());
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return getValue().hashCode();
     }
 
     @ExportMessage
@@ -112,44 +460,44 @@ public final class LLBigNumber implements TruffleObject, Comparable<LLBigNumber>
     @ExportMessage
     @TruffleBoundary
     boolean fitsInByte() {
-        return value.bitLength() < 8;
+        return getValue().bitLength() < 8;
     }
 
     @ExportMessage
     @TruffleBoundary
     boolean fitsInShort() {
-        return value.bitLength() < 16;
+        return getValue().bitLength() < 16;
     }
 
     @ExportMessage
     @TruffleBoundary
     boolean fitsInFloat() {
-        return fitsInInt() && inSafeFloatRange(value.intValue());
+        return fitsInInt() && inSafeFloatRange(getValue().intValue());
     }
 
     @ExportMessage
     @TruffleBoundary
     boolean fitsInLong() {
-        return value.bitLength() < 64;
+        return getValue().bitLength() < 64;
     }
 
     @ExportMessage
     @TruffleBoundary
     boolean fitsInInt() {
-        return value.bitLength() < 32;
+        return getValue().bitLength() < 32;
     }
 
     @ExportMessage
     @TruffleBoundary
     boolean fitsInDouble() {
-        return fitsInLong() && inSafeDoubleRange(value.longValue());
+        return fitsInLong() && inSafeDoubleRange(getValue().longValue());
     }
 
     @ExportMessage
     @TruffleBoundary
     double asDouble() throws UnsupportedMessageException {
         if (fitsInDouble()) {
-            return value.doubleValue();
+            return getValue().doubleValue();
         } else {
             throw UnsupportedMessageException.create();
         }
@@ -159,7 +507,7 @@ public final class LLBigNumber implements TruffleObject, Comparable<LLBigNumber>
     @TruffleBoundary
     long asLong() throws UnsupportedMessageException {
         if (fitsInLong()) {
-            return value.longValue();
+            return getValue().longValue();
         } else {
             throw UnsupportedMessageException.create();
         }
@@ -169,7 +517,7 @@ public final class LLBigNumber implements TruffleObject, Comparable<LLBigNumber>
     @TruffleBoundary
     byte asByte() throws UnsupportedMessageException {
         if (fitsInByte()) {
-            return value.byteValue();
+            return getValue().byteValue();
         } else {
             throw UnsupportedMessageException.create();
         }
@@ -179,7 +527,7 @@ public final class LLBigNumber implements TruffleObject, Comparable<LLBigNumber>
     @TruffleBoundary
     int asInt() throws UnsupportedMessageException {
         if (fitsInInt()) {
-            return value.intValue();
+            return getValue().intValue();
         } else {
             throw UnsupportedMessageException.create();
         }
@@ -189,7 +537,7 @@ public final class LLBigNumber implements TruffleObject, Comparable<LLBigNumber>
     @TruffleBoundary
     float asFloat() throws UnsupportedMessageException {
         if (fitsInFloat()) {
-            return value.floatValue();
+            return getValue().floatValue();
         } else {
             throw UnsupportedMessageException.create();
         }
@@ -199,7 +547,7 @@ public final class LLBigNumber implements TruffleObject, Comparable<LLBigNumber>
     @TruffleBoundary
     short asShort() throws UnsupportedMessageException {
         if (fitsInShort()) {
-            return value.shortValue();
+            return getValue().shortValue();
         } else {
             throw UnsupportedMessageException.create();
         }
@@ -228,7 +576,7 @@ public final class LLBigNumber implements TruffleObject, Comparable<LLBigNumber>
     @ExportMessage
     @TruffleBoundary
     Object toDisplayString(boolean allowSideEffects) {
-        return value.toString();
+        return getValue().toString();
     }
 
 }
@@ -193,7 +193,7 @@ public final class LLContext {
             argumentNodes[i] = new LLReadArgumentNode(i);
         }
         /* Instantiate the builtin node. This node performs the actual functionality. */
-        LLBuiltinNode builtinBodyNode = factory.createNode((Object) argumentNodes);
+        LLBuiltinNode builtinBodyNode = LLBuiltinNode.create(factory, argumentNodes);
         builtinBodyNode.addRootTag();
         /* The name of the builtin function is specified via an annotation on the node class. */
         String name = lookupNodeInfo(builtinBodyNode.getClass()).shortName();
@@ -201,6 +201,7 @@ public final class LLContext {
 
         /* Wrap the builtin in a RootNode. Truffle requires all AST to start with a RootNode. */
         LLRootNode rootNode = new LLRootNode(language, new FrameDescriptor(), builtinBodyNode, BUILTIN_SOURCE.createUnavailableSection(), name);
+        rootNode.setCloningAllowed(true);
 
         /* Register the builtin function in our function registry. */
         getFunctionRegistry().register(name, Truffle.getRuntime().createCallTarget(rootNode));
@@ -230,7 +231,7 @@ public final class LLContext {
      */
 
     public static Object fromForeignValue(Object a) {
-        if (a instanceof Long || a instanceof LLBigNumber || a instanceof String || a instanceof Boolean) {
+        if (a instanceof Long || a instanceof Double || a instanceof LLBigNumber || a instanceof String || a instanceof Boolean) {
             return a;
         } else if (a instanceof Character) {
             return fromForeignCharacter((Character) a);
@@ -245,7 +246,10 @@ public final class LLContext {
     }
 
     @TruffleBoundary
-    private static long fromForeignNumber(Object a) {
+    private static Object fromForeignNumber(Object a) {
+        if (a instanceof Float) {
+            return ((Float) a).doubleValue();
+        }
         return ((Number) a).longValue();
     }
 
@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.runtime;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+import com.guillermomolina.lazylanguage.LLLanguage;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.interop.UnsupportedMessageException;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
+
+/**
+ * The fixed-point decimal numbers of Lazy, written with an {@code m} suffix like {@code 12.50m}.
+ * While it fits, a decimal is an unscaled {@code long} and a scale, i.e., {@code 12.50m} is
+ * {@code 1250} with scale {@code 2}, and the operations compute on the {@code long} values without
+ * a {@link TruffleBoundary}. Only when the unscaled value overflows, a decimal is promoted to a
+ * {@link BigDecimal}.
+ * <p>
+ * Sums, differences and products are exact. A quotient has the larger scale of its operands and is
+ * rounded half to even, so {@code 10.00m / 3} is {@code 3.33m}.
+ */
+@ExportLibrary(InteropLibrary.class)
+public final class LLDecimal implements TruffleObject, Comparable<LLDecimal> {
+
+    @CompilationFinal(dimensions = 1) private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long unscaled;
+    private final int scale;
+
+    /** The value if the unscaled value does not fit into a {@code long}, {@code null} otherwise. */
+    private final BigDecimal big;
+
+    public LLDecimal(long unscaled, int scale) {
+        this.unscaled = unscaled;
+        this.scale = scale;
+        this.big = null;
+    }
+
+    @TruffleBoundary
+    public LLDecimal(BigDecimal value) {
+        if (value.unscaledValue().bitLength() < Long.SIZE) {
+            this.unscaled = value.unscaledValue().longValue();
+            this.scale = value.scale();
+            this.big = null;
+        } else {
+            this.unscaled = 0;
+            this.scale = 0;
+            this.big = value;
+        }
+    }
+
+    @TruffleBoundary
+    public static LLDecimal parse(String literal) {
+        return new LLDecimal(new BigDecimal(literal));
+    }
+
+    @TruffleBoundary
+    public static LLDecimal valueOf(LLBigNumber value) {
+        return new LLDecimal(new BigDecimal(value.getValue()));
+    }
+
+    @TruffleBoundary
+    public BigDecimal getValue() {
+        return big != null ? big : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    public LLDecimal add(LLDecimal right) {
+        if (big == null && right.big == null) {
+            try {
+                if (scale == right.scale) {
+                    return new LLDecimal(Math.addExact(unscaled, right.unscaled), scale);
+                } else if (scale < right.scale) {
+                    return new LLDecimal(Math.addExact(rescale(unscaled, right.scale - scale), right.unscaled), right.scale);
+                } else {
+                    return new LLDecimal(Math.addExact(unscaled, rescale(right.unscaled, scale - right.scale)), scale);
+                }
+            } catch (ArithmeticException e) {
+                /* The unscaled value overflows: compute on BigDecimal. */
+            }
+        }
+        return addBig(right);
+    }
+
+    public LLDecimal subtract(LLDecimal right) {
+        if (big == null && right.big == null) {
+            try {
+                if (scale == right.scale) {
+                    return new LLDecimal(Math.subtractExact(unscaled, right.unscaled), scale);
+                } else if (scale < right.scale) {
+                    return new LLDecimal(Math.subtractExact(rescale(unscaled, right.scale - scale), right.unscaled), right.scale);
+                } else {
+                    return new LLDecimal(Math.subtractExact(unscaled, rescale(right.unscaled, scale - right.scale)), scale);
+                }
+            } catch (ArithmeticException e) {
+                /* The unscaled value overflows: compute on BigDecimal. */
+            }
+        }
+        return subtractBig(right);
+    }
+
+    public LLDecimal multiply(LLDecimal right) {
+        if (big == null && right.big == null) {
+            try {
+                return new LLDecimal(Math.multiplyExact(unscaled, right.unscaled), Math.addExact(scale, right.scale));
+            } catch (ArithmeticException e) {
+                /* The unscaled value overflows: compute on BigDecimal. */
+            }
+        }
+        return multiplyBig(right);
+    }
+
+    public LLDecimal divide(LLDecimal right) {
+        int resultScale = Math.max(scale, right.scale);
+        if (big == null && right.big == null && right.unscaled != 0 && right.unscaled != Long.MIN_VALUE) {
+            try {
+                long dividend = rescale(unscaled, resultScale - scale + right.scale);
+                long divisor = right.unscaled;
+                long quotient = dividend / divisor;
+                if ((dividend & divisor & quotient) < 0) {
+                    /* Long.MIN_VALUE / -1 overflows. */
+                    throw new ArithmeticException();
+                }
+                long remainder = Math.abs(dividend % divisor);
+                long rest = Math.abs(divisor) - remainder;
+                if (remainder > rest || (remainder == rest && (quotient & 1) != 0)) {
+                    quotient += (dividend ^ divisor) < 0 ? -1 : 1;
+                }
+                return new LLDecimal(quotient, resultScale);
+            } catch (ArithmeticException e) {
+                /* The unscaled value overflows: compute on BigDecimal. */
+            }
+        }
+        return divideBig(right, resultScale);
+    }
+
+    private static long rescale(long value, int digits) {
+        if (digits >= POWERS_OF_TEN.length) {
+            throw new ArithmeticException();
+        }
+        return Math.multiplyExact(value, POWERS_OF_TEN[digits]);
+    }
+
+    @TruffleBoundary
+    private LLDecimal addBig(LLDecimal right) {
+        return new LLDecimal(getValue().add(right.getValue()));
+    }
+
+    @TruffleBoundary
+    private LLDecimal subtractBig(LLDecimal right) {
+        return new LLDecimal(getValue().subtract(right.getValue()));
+    }
+
+    @TruffleBoundary
+    private LLDecimal multiplyBig(LLDecimal right) {
+        return new LLDecimal(getValue().multiply(right.getValue()));
+    }
+
+    @TruffleBoundary
+    private LLDecimal divideBig(LLDecimal right, int resultScale) {
+        return new LLDecimal(getValue().divide(right.getValue(), resultScale, RoundingMode.HALF_EVEN));
+    }
+
+    public int compareTo(LLDecimal o) {
+        if (big == null && o.big == null) {
+            try {
+                if (scale == o.scale) {
+                    return Long.compare(unscaled, o.unscaled);
+                } else if (scale < o.scale) {
+                    return Long.compare(rescale(unscaled, o.scale - scale), o.unscaled);
+                } else {
+                    return Long.compare(unscaled, rescale(o.unscaled, scale - o.scale));
+                }
+            } catch (ArithmeticException e) {
+                /* The rescaled value overflows: compare the BigDecimal values. */
+            }
+        }
+        return compareBig(o);
+    }
+
+    @TruffleBoundary
+    private int compareBig(LLDecimal o) {
+        return getValue().compareTo(o.getValue());
+    }
+
+    @Override
+    @TruffleBoundary
+    public String toString() {
+        return getValue().toPlainString();
+    }
+
+    /** Decimals are equal if their values are, regardless of their scales. */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof LLDecimal) {
+            return compareTo((LLDecimal) obj) == 0;
+        }
+        return false;
+    }
+
+    @Override
+    @TruffleBoundary
+    public int hashCode() {
+        return getValue().stripTrailingZeros().hashCode();
+    }
+
+    /**
+     * Returns the integer value of the decimal if it has no fraction and fits into the given
+     * number of bits, or {@code null}.
+     */
+    @TruffleBoundary
+    private BigInteger integerValue(int bits) {
+        BigDecimal value = getValue();
+        if (value.signum() != 0 && value.stripTrailingZeros().scale() > 0) {
+            return null;
+        }
+        BigInteger integer = value.toBigInteger();
+        return integer.bitLength() < bits ? integer : null;
+    }
+
+    @ExportMessage
+    boolean isNumber() {
+        return true;
+    }
+
+    @ExportMessage
+    boolean fitsInByte() {
+        return integerValue(Byte.SIZE) != null;
+    }
+
+    @ExportMessage
+    boolean fitsInShort() {
+        return integerValue(Short.SIZE) != null;
+    }
+
+    @ExportMessage
+    boolean fitsInInt() {
+        return integerValue(Integer.SIZE) != null;
+    }
+
+    @ExportMessage
+    boolean fitsInLong() {
+        return integerValue(Long.SIZE) != null;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    boolean fitsInFloat() {
+        float f = getValue().floatValue();
+        return !Float.isInfinite(f) && new BigDecimal(f).compareTo(getValue()) == 0;
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    boolean fitsInDouble() {
+        double d = getValue().doubleValue();
+        return !Double.isInfinite(d) && new BigDecimal(d).compareTo(getValue()) == 0;
+    }
+
+    @ExportMessage
+    byte asByte() throws UnsupportedMessageException {
+        BigInteger integer = integerValue(Byte.SIZE);
+        if (integer == null) {
+            throw UnsupportedMessageException.create();
+        }
+        return integer.byteValue();
+    }
+
+    @ExportMessage
+    short asShort() throws UnsupportedMessageException {
+        BigInteger integer = integerValue(Short.SIZE);
+        if (integer == null) {
+            throw UnsupportedMessageException.create();
+        }
+        return integer.shortValue();
+    }
+
+    @ExportMessage
+    int asInt() throws UnsupportedMessageException {
+        BigInteger integer = integerValue(Integer.SIZE);
+        if (integer == null) {
+            throw UnsupportedMessageException.create();
+        }
+        return integer.intValue();
+    }
+
+    @ExportMessage
+    long asLong() throws UnsupportedMessageException {
+        BigInteger integer = integerValue(Long.SIZE);
+        if (integer == null) {
+            throw UnsupportedMessageException.create();
+        }
+        return integer.longValue();
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    float asFloat() throws UnsupportedMessageException {
+        if (fitsInFloat()) {
+            return getValue().floatValue();
+        } else {
+            throw UnsupportedMessageException.create();
+        }
+    }
+
+    @ExportMessage
+    @TruffleBoundary
+    double asDouble() throws UnsupportedMessageException {
+        if (fitsInDouble()) {
+            return getValue().doubleValue();
+        } else {
+            throw UnsupportedMessageException.create();
+        }
+    }
+
+    @ExportMessage
+    boolean hasLanguage() {
+        return true;
+    }
+
+    @ExportMessage
+    Class<? extends TruffleLanguage<?>> getLanguage() {
+        return LLLanguage.class;
+    }
+
+    @ExportMessage
+    boolean hasMetaObject() {
+        return true;
+    }
+
+    @ExportMessage
+    Object getMetaObject() {
+        return LLType.NUMBER;
+    }
+
+    @ExportMessage
+    Object toDisplayString(boolean allowSideEffects) {
+        return toString();
+    }
+
+}
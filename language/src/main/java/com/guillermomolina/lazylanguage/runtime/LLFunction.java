@@ -40,10 +40,13 @@
  */
 package com.guillermomolina.lazylanguage.runtime;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.logging.Level;
 
 import com.guillermomolina.lazylanguage.LLLanguage;
 import com.guillermomolina.lazylanguage.nodes.LLUndefinedFunctionRootNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLTailCallException;
 import com.oracle.truffle.api.Assumption;
 import com.oracle.truffle.api.CallTarget;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
@@ -102,8 +105,21 @@ public final class LLFunction implements TruffleObject {
      */
     private final CyclicAssumption callTargetStable;
 
-    protected LLFunction(LLLanguage language, String name) {
+    /** The registry this function is defined in, which resolves the functions it calls. */
+    private final LLFunctionRegistry registry;
+
+    /**
+     * The result of the {@link LLPurityAnalysis purity analysis} of the current call target, or
+     * {@code null} if it was not analyzed yet. Guarded by the {@link #registry}.
+     */
+    Assumption pure;
+
+    /** The functions whose purity was derived from the purity of this one, guarded likewise. */
+    final Set<LLFunction> purityDependents = new HashSet<>();
+
+    protected LLFunction(LLLanguage language, LLFunctionRegistry registry, String name) {
         this.name = name;
+        this.registry = registry;
         this.callTarget = Truffle.getRuntime().createCallTarget(new LLUndefinedFunctionRootNode(language, name));
         this.callTargetStable = new CyclicAssumption(name);
     }
@@ -120,6 +136,24 @@ public final class LLFunction implements TruffleObject {
          */
         LOG.log(Level.FINE, "Installed call target for: {0}", name);
         callTargetStable.invalidate();
+        synchronized (registry) {
+            invalidatePurity();
+        }
+    }
+
+    /**
+     * Discards the purity of this function and of the analyzed functions that relied on it.
+     */
+    void invalidatePurity() {
+        if (pure != null) {
+            pure.invalidate();
+            pure = null;
+        }
+        for (LLFunction dependent : purityDependents) {
+            if (dependent.pure != null) {
+                dependent.invalidatePurity();
+            }
+        }
     }
 
     public RootCallTarget getCallTarget() {
@@ -130,6 +164,22 @@ public final class LLFunction implements TruffleObject {
         return callTargetStable.getAssumption();
     }
 
+    /**
+     * Returns an assumption that is valid as long as this function is pure, i.e., it writes no
+     * properties and only calls pure builtins and functions. Pure functions can still fail or not
+     * terminate, and read the properties of their arguments. The assumption is invalidated when this
+     * function, or a function it calls, is redefined. It is already invalid if the function is not
+     * pure.
+     */
+    @TruffleBoundary
+    public Assumption getPureAssumption() {
+        return LLPurityAnalysis.analyze(registry, this);
+    }
+
+    public boolean isPure() {
+        return getPureAssumption().isValid();
+    }
+
     /**
      * This method is, e.g., called when using a function literal in a string concatenation. So
      * changing it has an effect on Lazy programs.
@@ -270,11 +320,13 @@ public final class LLFunction implements TruffleObject {
         protected static Object doDirect(LLFunction function, Object[] arguments,
                         @Cached("function.getCallTargetStable()") Assumption callTargetStable,
                         @Cached("function.getCallTarget()") RootCallTarget cachedTarget,
-                        @Cached("create(cachedTarget)") DirectCallNode callNode) {
+                        @Cached("create(cachedTarget)") DirectCallNode callNode,
+                        @Cached IndirectCallNode tailCallNode) {
 
             /* Inline cache hit, we are safe to execute the cached call target. */
             Object returnValue = callNode.call(arguments);
-            return returnValue;
+            /* The function may return a tail call that it did not execute itself. */
+            return LLTailCallException.resolve(returnValue, tailCallNode);
         }
 
         /**
@@ -289,7 +341,7 @@ public final class LLFunction implements TruffleObject {
              * Lazy has a quite lazy call lookup: just ask the function for the current call target,
              * and call it.
              */
-            return callNode.call(function.getCallTarget(), arguments);
+            return LLTailCallException.resolve(callNode.call(function.getCallTarget(), arguments), callNode);
         }
     }
 
@@ -47,10 +47,11 @@ import java.util.List;
 import java.util.Map;
 
 import com.guillermomolina.lazylanguage.LLLanguage;
-import com.guillermomolina.lazylanguage.parser.LLParser;
+import com.guillermomolina.lazylanguage.nodes.LLRootNode;
 import com.oracle.truffle.api.RootCallTarget;
 import com.oracle.truffle.api.interop.TruffleObject;
 import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.source.SourceSection;
 
 /**
  * Manages the mapping from function names to {@link LLFunction function objects}.
@@ -71,7 +72,7 @@ public final class LLFunctionRegistry {
     public LLFunction lookup(String name, boolean createIfNotPresent) {
         LLFunction result = functionsObject.functions.get(name);
         if (result == null && createIfNotPresent) {
-            result = new LLFunction(language, name);
+            result = new LLFunction(language, this, name);
             functionsObject.functions.put(name, result);
         }
         return result;
@@ -80,14 +81,42 @@ public final class LLFunctionRegistry {
     /**
      * Associates the {@link LLFunction} with the given name with the given implementation root
      * node. If the function did not exist before, it defines the function. If the function existed
-     * before, it redefines the function and the old implementation is discarded.
+     * before, it redefines the function and the old implementation is discarded, unless the new
+     * implementation is {@link #isUnchanged unchanged}.
      */
     public LLFunction register(String name, RootCallTarget callTarget) {
         LLFunction function = lookup(name, true);
-        function.setCallTarget(callTarget);
+        RootCallTarget installed = function.getCallTarget();
+        if (!isUnchanged(installed, callTarget)) {
+            function.setCallTarget(callTarget);
+        } else if (installed != callTarget) {
+            /* Stack traces and tools refer to the source that defined the function last. */
+            ((LLRootNode) installed.getRootNode()).relocate(callTarget.getRootNode().getSourceSection());
+        }
         return function;
     }
 
+    /**
+     * Parsing the same function text always builds the same tree. Keeping the installed call target
+     * of a function that is redefined with the same text avoids invalidating the code of all its
+     * callers, so, e.g., repeating {@code defineFunction} with the same code, or with code in which
+     * only other functions changed, is almost free. The kept function is
+     * {@link LLRootNode#relocate relocated} to the new source.
+     */
+    private static boolean isUnchanged(RootCallTarget installed, RootCallTarget callTarget) {
+        if (installed == callTarget) {
+            return true;
+        }
+        if (installed == null) {
+            return false;
+        }
+        SourceSection installedSection = installed.getRootNode().getSourceSection();
+        SourceSection section = callTarget.getRootNode().getSourceSection();
+        return installed.getRootNode() instanceof LLRootNode && installedSection != null && section != null && installedSection.isAvailable() && section.isAvailable() &&
+                        installedSection.getCharLength() == section.getCharLength() &&
+                        installedSection.getCharacters().toString().equals(section.getCharacters().toString());
+    }
+
     public void register(Map<String, RootCallTarget> newFunctions) {
         for (Map.Entry<String, RootCallTarget> entry : newFunctions.entrySet()) {
             register(entry.getKey(), entry.getValue());
@@ -95,8 +124,7 @@ public final class LLFunctionRegistry {
     }
 
     public void register(Source newFunctions) {
-        LLParser parser = new LLParser(language, newFunctions);
-        register(parser.getAllFunctions());
+        register(language.parseFunctions(newFunctions, Collections.emptyList()));
     }
 
     public LLFunction getFunction(String name) {
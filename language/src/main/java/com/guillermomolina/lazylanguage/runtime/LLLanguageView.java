@@ -132,7 +132,11 @@ public final class LLLanguageView implements TruffleObject {
                      * this if-else cascade should fold after partial evaluation.
                      */
                     if (type == LLType.NUMBER) {
-                        return longToString(interop.asLong(delegate));
+                        /* A floating point number keeps its fraction even if it is integral. */
+                        if (!(delegate instanceof Double) && interop.fitsInLong(delegate)) {
+                            return longToString(interop.asLong(delegate));
+                        }
+                        return doubleToString(interop.asDouble(delegate));
                     } else if (type == LLType.BOOLEAN) {
                         return Boolean.toString(interop.asBoolean(delegate));
                     } else if (type == LLType.STRING) {
@@ -158,6 +162,11 @@ public final class LLLanguageView implements TruffleObject {
         return Long.toString(l);
     }
 
+    @TruffleBoundary
+    private static String doubleToString(double d) {
+        return Double.toString(d);
+    }
+
     public static Object create(Object value) {
         assert isPrimitiveOrFromOtherLanguage(value);
         return new LLLanguageView(value);
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.runtime;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.guillermomolina.lazylanguage.builtins.LLBuiltinNode;
+import com.guillermomolina.lazylanguage.nodes.LLRootNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLLazyBlockNode;
+import com.guillermomolina.lazylanguage.nodes.controlflow.LLLazyFunctionBodyNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLFunctionLiteralNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLInvokeNode;
+import com.guillermomolina.lazylanguage.nodes.expression.LLWritePropertyNode;
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.instrumentation.InstrumentableNode.WrapperNode;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeUtil;
+import com.oracle.truffle.api.nodes.NodeVisitor;
+import com.oracle.truffle.api.nodes.RootNode;
+
+/**
+ * Decides whether a {@link LLFunction} is pure: it makes no property writes, its builtins are
+ * {@link LLBuiltinNode#isPure() pure}, and it only calls functions by name that are pure too.
+ * Calls of any other value could run arbitrary code, so they make a function impure.
+ * <p>
+ * The result is kept on the function until it, or one of the functions it calls, is redefined.
+ * Recursive functions are analyzed optimistically: a function being analyzed is assumed to be pure
+ * when it is called again, and the functions that relied on it are analyzed again if it is not.
+ * Functions whose body, or one of whose branches, is {@link LLLazyFunctionBodyNode not parsed yet}
+ * are not pure.
+ */
+final class LLPurityAnalysis {
+
+    private final LLFunctionRegistry registry;
+    private final Set<LLFunction> inProgress = new HashSet<>();
+
+    private LLPurityAnalysis(LLFunctionRegistry registry) {
+        this.registry = registry;
+    }
+
+    static Assumption analyze(LLFunctionRegistry registry, LLFunction function) {
+        synchronized (registry) {
+            return new LLPurityAnalysis(registry).analyze(function);
+        }
+    }
+
+    /**
+     * Returns the purity of {@code function}, or {@code null} if it is being analyzed already.
+     */
+    private Assumption analyze(LLFunction function) {
+        if (function.pure != null) {
+            return function.pure;
+        }
+        if (!inProgress.add(function)) {
+            return null;
+        }
+        boolean isPure = isPure(function, function.getCallTarget().getRootNode());
+        inProgress.remove(function);
+
+        Assumption pure = Truffle.getRuntime().createAssumption(function.getName() + " is pure");
+        if (!isPure) {
+            pure.invalidate();
+            /* The functions that called this one while it was analyzed assumed it was pure. */
+            function.invalidatePurity();
+        }
+        function.pure = pure;
+        return pure;
+    }
+
+    private boolean isPure(LLFunction function, RootNode rootNode) {
+        if (!(rootNode instanceof LLRootNode)) {
+            return false;
+        }
+        Node body = unwrap(((LLRootNode) rootNode).getBodyNode());
+        if (body instanceof LLBuiltinNode) {
+            return ((LLBuiltinNode) body).isPure();
+        }
+        if (body instanceof LLLazyFunctionBodyNode) {
+            return false;
+        }
+        return new NodeVisitor() {
+            @Override
+            public boolean visit(Node node) {
+                if (node instanceof LLWritePropertyNode || node instanceof LLLazyBlockNode) {
+                    return false;
+                }
+                if (node instanceof LLInvokeNode) {
+                    Node callee = unwrap(((LLInvokeNode) node).getFunctionNode());
+                    if (!(callee instanceof LLFunctionLiteralNode)) {
+                        return false;
+                    }
+                    LLFunction called = registry.lookup(((LLFunctionLiteralNode) callee).getFunctionName(), true);
+                    called.purityDependents.add(function);
+                    Assumption calledPure = analyze(called);
+                    if (calledPure != null && !calledPure.isValid()) {
+                        return false;
+                    }
+                }
+                return NodeUtil.forEachChild(node, this);
+            }
+        }.visit(body);
+    }
+
+    private static Node unwrap(Node node) {
+        return node instanceof WrapperNode ? ((WrapperNode) node).getDelegateNode() : node;
+    }
+}
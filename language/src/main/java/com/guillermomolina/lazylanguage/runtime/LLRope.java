@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.runtime;
+
+import java.util.ArrayDeque;
+
+import com.guillermomolina.lazylanguage.LLLanguage;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
+
+/**
+ * A string built by concatenation, which references its two parts instead of copying their
+ * characters. The characters are copied once, when a consumer needs the {@link #toString() flat
+ * string}, so building a string in a loop like {@code s = s + x} takes linear instead of quadratic
+ * time. Short concatenations are still copied right away, since that is cheaper than a rope.
+ * <p>
+ * Specializations on {@link String} also accept ropes, because of the implicit conversion in
+ * {@code LLTypes}.
+ */
+@ExportLibrary(InteropLibrary.class)
+public final class LLRope implements TruffleObject {
+
+    /** Concatenations up to this length are flat strings. */
+    private static final int MIN_ROPE_LENGTH = 64;
+
+    /** The parts, each a {@link String} or a rope, until the rope is flattened. */
+    private Object left;
+    private Object right;
+    private final int length;
+    private String flat;
+
+    private LLRope(Object left, Object right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    /**
+     * Concatenates two strings, each a {@link String} or a rope, and returns a {@link String} or a
+     * rope.
+     */
+    @TruffleBoundary
+    public static Object concat(Object left, Object right) {
+        int leftLength = length(left);
+        int rightLength = length(right);
+        if (leftLength == 0) {
+            return right;
+        } else if (rightLength == 0) {
+            return left;
+        }
+        int length = Math.addExact(leftLength, rightLength);
+        if (length <= MIN_ROPE_LENGTH) {
+            return left.toString() + right.toString();
+        }
+        return new LLRope(left, right, length);
+    }
+
+    private static int length(Object string) {
+        return string instanceof LLRope ? ((LLRope) string).length : ((String) string).length();
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the characters of the rope, copying them on the first call. The parts are released
+     * then, so a flattened rope does not keep its characters twice.
+     */
+    @Override
+    @TruffleBoundary
+    public String toString() {
+        if (flat == null) {
+            flat = flatten();
+            left = null;
+            right = null;
+        }
+        return flat;
+    }
+
+    /** Appends the parts without recursion, since the ropes of a loop are as deep as it is long. */
+    private String flatten() {
+        StringBuilder builder = new StringBuilder(length);
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(right);
+        pending.push(left);
+        while (!pending.isEmpty()) {
+            Object part = pending.pop();
+            if (part instanceof String) {
+                builder.append((String) part);
+            } else {
+                LLRope rope = (LLRope) part;
+                if (rope.flat != null) {
+                    builder.append(rope.flat);
+                } else {
+                    pending.push(rope.right);
+                    pending.push(rope.left);
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    @ExportMessage
+    boolean isString() {
+        return true;
+    }
+
+    @ExportMessage
+    String asString() {
+        return toString();
+    }
+
+    @ExportMessage
+    boolean hasLanguage() {
+        return true;
+    }
+
+    @ExportMessage
+    Class<? extends TruffleLanguage<?>> getLanguage() {
+        return LLLanguage.class;
+    }
+
+    @ExportMessage
+    boolean hasMetaObject() {
+        return true;
+    }
+
+    @ExportMessage
+    Object getMetaObject() {
+        return LLType.STRING;
+    }
+
+    @ExportMessage
+    Object toDisplayString(boolean allowSideEffects) {
+        return toString();
+    }
+
+}
@@ -78,7 +78,7 @@ public final class LLType implements TruffleObject {
      * nicely match those of the types in InteropLibrary. This might not be the case and more
      * additional checks need to be performed (similar to number checking for LLBigNumber).
      */
-    public static final LLType NUMBER = new LLType("Number", (l, v) -> l.fitsInLong(v) || v instanceof LLBigNumber);
+    public static final LLType NUMBER = new LLType("Number", (l, v) -> l.fitsInLong(v) || l.fitsInDouble(v) || v instanceof LLBigNumber || v instanceof LLDecimal);
     public static final LLType NULL = new LLType("NULL", (l, v) -> l.isNull(v));
     public static final LLType STRING = new LLType("String", (l, v) -> l.isString(v));
     public static final LLType BOOLEAN = new LLType("Boolean", (l, v) -> l.isBoolean(v));
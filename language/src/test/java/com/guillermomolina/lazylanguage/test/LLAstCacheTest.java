@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.test;
+
+import static com.guillermomolina.lazylanguage.test.LLJavaInteropTest.toUnixString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LLAstCacheTest {
+
+    // @formatter:off
+    private static final String CODE =
+        "function fib(n) {\n" +
+        "  if (n < 2) { return n; }\n" +
+        "  return fib(n - 1) + fib(n - 2);\n" +
+        "}\n" +
+        "function main() {\n" +
+        "  o = new();\n" +
+        "  o.name = \"fib\";\n" +
+        "  i = 0;\n" +
+        "  while (i <= 10) { i = i + 1; if (i == 5) { continue; } }\n" +
+        "  println(o.name + \" \" + fib(i) + \" \" + (3 >= 2) + \" \" + (3 != 2));\n" +
+        "}\n";
+    // @formatter:on
+
+    private static final FileTime OLD = FileTime.fromMillis(0);
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("llast");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private String run() {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (Context context = Context.newBuilder("lazy").allowExperimentalOptions(true).allowIO(true).out(os).option("lazy.AstCacheDir", directory.toString()).build()) {
+            context.eval("lazy", CODE);
+        }
+        return toUnixString(os);
+    }
+
+    /** Returns the line of the error that running {@code code} with lazily built branches reports. */
+    private int errorLine(String code) {
+        try (Context context = Context.newBuilder("lazy").allowExperimentalOptions(true).allowIO(true).option("lazy.LazyBranches", "true").option("lazy.AstCacheDir",
+                        directory.toString()).build()) {
+            context.eval("lazy", code);
+            fail("expected a parse error");
+            return -1;
+        } catch (PolyglotException e) {
+            assertTrue(e.getMessage(), e.isSyntaxError());
+            return e.getSourceLocation().getStartLine();
+        }
+    }
+
+    private Path snapshot() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            File[] snapshots = files.map(Path::toFile).toArray(File[]::new);
+            assertEquals(1, snapshots.length);
+            return snapshots[0].toPath();
+        }
+    }
+
+    @Test
+    public void loadsStoredSnapshot() throws IOException {
+        assertEquals("fib 89 true true\n", run());
+        Path snapshot = snapshot();
+        Files.setLastModifiedTime(snapshot, OLD);
+
+        assertEquals("fib 89 true true\n", run());
+        assertEquals(snapshot, snapshot());
+        assertEquals(OLD, Files.getLastModifiedTime(snapshot));
+    }
+
+    @Test
+    public void errorInLoadedSnapshotHasPosition() throws IOException {
+        // @formatter:off
+        String code =
+            "function f(n) {\n" +
+            "  if (n < 1) {\n" +
+            "    break;\n" +
+            "  }\n" +
+            "}\n" +
+            "function main() { f(0); }\n";
+        // @formatter:on
+        assertEquals(3, errorLine(code));
+        Path snapshot = snapshot();
+        Files.setLastModifiedTime(snapshot, OLD);
+        assertEquals(3, errorLine(code));
+        assertEquals(OLD, Files.getLastModifiedTime(snapshot()));
+    }
+
+    @Test
+    public void damagedSnapshotIsParsedAgain() throws IOException {
+        run();
+        Path snapshot = snapshot();
+        Files.write(snapshot, new byte[]{'L', 'L', 'A', 'S', 0, 0, 0, 1, 0, 0, 0, 0, 1, 42});
+        Files.setLastModifiedTime(snapshot, OLD);
+
+        assertEquals("fib 89 true true\n", run());
+        assertNotEquals(OLD, Files.getLastModifiedTime(snapshot()));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.management.ExecutionListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LLBytecodeTest {
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = Context.newBuilder("lazy").allowExperimentalOptions(true).option("lazy.Bytecode", "true").build();
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void testListenerAttachedLater() {
+        context.eval("lazy", "function fac(n) { if (n <= 1) { return 1; } return fac(n - 1) * n; }");
+        Value fac = context.getBindings("lazy").getMember("fac");
+        /* Executes the bytecode, until a tool instruments the function. */
+        for (int i = 0; i < 10; i++) {
+            assertEquals(6, fac.execute(3).asInt());
+        }
+
+        List<String> statements = new ArrayList<>();
+        ExecutionListener.newBuilder().onEnter((e) -> statements.add(e.getLocation().getCharacters().toString())).//
+                        statements(true).attach(context.getEngine());
+        assertEquals(6, fac.execute(3).asInt());
+        assertEquals(6, statements.size());
+        assertEquals("n <= 1", statements.get(0));
+        assertEquals("return fac(n - 1) * n", statements.get(1));
+        assertEquals("return 1", statements.get(5));
+    }
+
+    @Test
+    public void testCancelEndlessLoop() throws InterruptedException {
+        context.eval("lazy", "function loop() { i = 0; while (i >= 0) { i = i + 1; } }");
+        Value loop = context.getBindings("lazy").getMember("loop");
+        Thread cancel = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            context.close(true);
+        });
+        cancel.start();
+        try {
+            loop.execute();
+            fail();
+        } catch (PolyglotException e) {
+            assertTrue(e.isCancelled());
+        }
+        cancel.join();
+        context = null;
+    }
+
+    @Test
+    public void testSameErrors() {
+        context.eval("lazy", "function add(a, b) { return a + b; }\n" +
+                        "function test(c) { if (c) { return 1; } return 0; }");
+        Value add = context.getBindings("lazy").getMember("add");
+        assertEquals(3, add.execute(1, 2).asInt());
+        assertEquals("9223372036854775808", add.execute(Long.MAX_VALUE, 1).toString());
+        assertEquals("1x", add.execute(1, "x").asString());
+        try {
+            add.execute(1, true);
+            fail();
+        } catch (PolyglotException e) {
+            assertEquals("Type error at Unnamed line 1 col 29: operation \"+\" not defined for Number 1, Boolean true", e.getMessage());
+        }
+        try {
+            context.getBindings("lazy").getMember("test").execute(2);
+            fail();
+        } catch (PolyglotException e) {
+            assertEquals("Type error at Unnamed line 2 col 20: operation \"if\" not defined for Number 2", e.getMessage());
+        }
+    }
+}
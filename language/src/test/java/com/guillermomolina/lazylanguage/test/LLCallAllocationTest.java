@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Measures the memory the interpreter allocates per call, with the allocation counter of the
+ * current thread. Run {@link #main} to print the numbers of the call benchmarks.
+ */
+public class LLCallAllocationTest {
+
+    private static final int WARMUP = 20;
+    private static final int RUNS = 100;
+    private static final int CALLS = 1000;
+
+    private static final String[] BENCHMARKS = {
+                    "function add(a, b) { return a + b; }\n" +
+                                    "function loop(n) { i = 0; while (i < n) { i = add(i, 1); } return i; }",
+                    "function one() { return 1; }\n" +
+                                    "function loop(n) { i = 0; s = 0; while (i < n) { s = s + one(); i = i + 1; } return s; }"
+    };
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            return (com.sun.management.ThreadMXBean) bean;
+        }
+        return null;
+    }
+
+    /** Returns the bytes allocated per call of {@code loop(n)}, which makes {@code n} calls. */
+    private static double bytesPerCall(com.sun.management.ThreadMXBean bean, String source, boolean bytecode) {
+        try (Context context = Context.newBuilder("lazy").allowExperimentalOptions(true).option("lazy.Bytecode", Boolean.toString(bytecode)).build()) {
+            context.eval("lazy", source);
+            Value loop = context.getBindings("lazy").getMember("loop");
+            for (int i = 0; i < WARMUP; i++) {
+                loop.execute(CALLS);
+            }
+            long thread = Thread.currentThread().getId();
+            long before = bean.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < RUNS; i++) {
+                loop.execute(CALLS);
+            }
+            return (bean.getThreadAllocatedBytes(thread) - before) / (double) (RUNS * CALLS);
+        }
+    }
+
+    private static void testNoArgumentArray(boolean bytecode) {
+        com.sun.management.ThreadMXBean bean = threadBean();
+        Assume.assumeNotNull(bean);
+        /* Both functions have one local variable, so their frames are of the same size. */
+        double withoutArguments = bytesPerCall(bean, "function f() { a = 1; return 1; }\n" +
+                        "function loop(n) { i = 0; while (i < n) { f(); i = i + 1; } return i; }", bytecode);
+        double withArgument = bytesPerCall(bean, "function f(a) { return 1; }\n" +
+                        "function loop(n) { i = 0; while (i < n) { f(1); i = i + 1; } return i; }", bytecode);
+        /* The argument array of one element takes at least 16 bytes. */
+        assertTrue(withoutArguments + " bytes without arguments, " + withArgument + " bytes with one argument", withoutArguments + 16 <= withArgument);
+    }
+
+    @Test
+    public void testNoArgumentArray() {
+        testNoArgumentArray(false);
+    }
+
+    @Test
+    public void testNoArgumentArrayBytecode() {
+        testNoArgumentArray(true);
+    }
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean bean = threadBean();
+        if (bean == null) {
+            System.out.println("The allocated memory of threads is not measured by this VM.");
+            return;
+        }
+        for (boolean bytecode : new boolean[]{false, true}) {
+            for (String benchmark : BENCHMARKS) {
+                String name = benchmark.substring("function ".length(), benchmark.indexOf(')') + 1);
+                System.out.printf("%-12s bytecode=%-5s %8.1f bytes/call%n", name, bytecode, bytesPerCall(bean, benchmark, bytecode));
+            }
+        }
+    }
+}
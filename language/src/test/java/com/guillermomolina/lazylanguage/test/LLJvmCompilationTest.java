@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.management.ExecutionListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.guillermomolina.lazylanguage.LLLanguage;
+import com.guillermomolina.lazylanguage.builtins.LLBuiltinNode;
+import com.guillermomolina.lazylanguage.nodes.LLRootNode;
+import com.guillermomolina.lazylanguage.runtime.LLContext;
+import com.guillermomolina.lazylanguage.runtime.LLFunction;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.CachedContext;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+
+public class LLJvmCompilationTest {
+
+    @NodeInfo(shortName = "hasJvmCode")
+    abstract static class HasJvmCodeBuiltin extends LLBuiltinNode {
+
+        @Specialization
+        @TruffleBoundary
+        boolean hasJvmCode(LLFunction function, @CachedContext(LLLanguage.class) LLContext context) {
+            return ((LLRootNode) function.getCallTarget().getRootNode()).getJvmCode(context.getFunctionRegistry()) != null;
+        }
+    }
+
+    private Context context;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @BeforeClass
+    public static void installBuiltin() {
+        LLLanguage.installBuiltin(LLJvmCompilationTestFactory.HasJvmCodeBuiltinFactory.getInstance());
+    }
+
+    @Before
+    public void setUp() {
+        context = createContext("2");
+    }
+
+    private Context createContext(String threshold) {
+        return Context.newBuilder("lazy").allowExperimentalOptions(true).out(out).option("lazy.JvmCompilationThreshold", threshold).build();
+    }
+
+    private boolean hasJvmCode(String name) {
+        return context.eval("lazy", "function main() { return hasJvmCode(" + name + "); }").asBoolean();
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void testCompiledCalls() {
+        context.eval("lazy", "function fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); }\n" +
+                        "function sum(n) { s = 0; i = 0; while (i < n) { i = i + 1; if (i == 3) { continue; } s = s + fib(i) / 1; } return s; }");
+        Value sum = context.eval("lazy", "function main() { r = 0; i = 0; while (i < 5) { r = sum(20); i = i + 1; } return r; }");
+        assertEquals(17708, sum.asLong());
+        assertTrue(hasJvmCode("fib"));
+        assertTrue(hasJvmCode("sum"));
+    }
+
+    @Test
+    public void testThresholdOfOne() {
+        context.close();
+        context = createContext("1");
+        context.eval("lazy", "function count(n) { i = 0; while (i < n) { i = i + 1; } return i; }");
+        /* The first compilation fails, because the local variables are not specialized yet. */
+        assertEquals(10, context.eval("lazy", "function main() { return count(10); }").asLong());
+        assertFalse(hasJvmCode("count"));
+        assertEquals(10, context.eval("lazy", "function main() { return count(10); }").asLong());
+        assertTrue(hasJvmCode("count"));
+    }
+
+    @Test
+    public void testBailout() {
+        context.eval("lazy", "function add(a, b) { return a + b; }");
+        assertEquals(3, context.eval("lazy", "function main() { add(1, 1); return add(1, 2); }").asLong());
+        assertTrue(hasJvmCode("add"));
+        /* A string argument makes the code bail out, and the code is discarded. */
+        assertEquals("ab", context.eval("lazy", "function main() { return add(\"a\", \"b\"); }").asString());
+        assertFalse(hasJvmCode("add"));
+        assertEquals(5, context.eval("lazy", "function main() { return add(2, 3); }").asLong());
+    }
+
+    @Test
+    public void testOverflow() {
+        context.eval("lazy", "function add(a, b) { return a + b; }");
+        Value result = context.eval("lazy", "function main() { r = 0; i = 0; while (i < 5) { r = add(9223372036854775806, i); i = i + 1; } return r; }");
+        assertEquals("9223372036854775810", result.toString());
+        /* An overflow only sends that one call to the tree. */
+        assertTrue(hasJvmCode("add"));
+    }
+
+    @Test
+    public void testRedefinedCallee() {
+        context.eval("lazy", "function f(n) { return n; }\n" +
+                        "function g(n) { return f(n) + 1; }");
+        assertEquals(5, context.eval("lazy", "function main() { r = 0; i = 0; while (i < 5) { r = g(i); i = i + 1; } return r; }").asLong());
+        assertTrue(hasJvmCode("g"));
+        context.eval("lazy", "function f(n) { println(n); return n; }");
+        assertEquals(8, context.eval("lazy", "function main() { return g(7); }").asLong());
+        assertEquals("7\n", out.toString());
+    }
+
+    @Test
+    public void testListenerAttachedLater() {
+        context.eval("lazy", "function fac(n) { if (n <= 1) { return 1; } return fac(n - 1) * n; }");
+        assertEquals(6, context.eval("lazy", "function main() { r = 0; i = 0; while (i < 5) { r = fac(3); i = i + 1; } return r; }").asLong());
+        assertTrue(hasJvmCode("fac"));
+
+        List<String> statements = new ArrayList<>();
+        ExecutionListener.newBuilder().onEnter((e) -> statements.add(e.getLocation().getCharacters().toString())).//
+                        statements(true).attach(context.getEngine());
+        assertEquals(6, context.eval("lazy", "function main() { return fac(3); }").asLong());
+        assertEquals(7, statements.size());
+        assertEquals("return fac(3)", statements.get(0));
+        assertEquals("n <= 1", statements.get(1));
+        assertEquals("return 1", statements.get(6));
+        assertFalse(hasJvmCode("fac"));
+    }
+}
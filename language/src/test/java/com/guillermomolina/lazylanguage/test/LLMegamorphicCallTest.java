@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.junit.After;
+import org.junit.Test;
+
+public class LLMegamorphicCallTest {
+
+    private static final String CALLBACKS = "function f1(x) { return x + 1; }\n" +
+                    "function f2(x) { return x + 2; }\n" +
+                    "function f3(x) { return x + 3; }\n" +
+                    "function f4(x) { return x + 4; }\n" +
+                    "function f5(x) { return x + 5; }\n" +
+                    "function apply(f, x) { return f(x); }\n" +
+                    "function run(n) {\n" +
+                    "  total = 0;\n" +
+                    "  i = 0;\n" +
+                    "  while (i < n) {\n" +
+                    "    total = apply(f1, total);\n" +
+                    "    total = apply(f2, total);\n" +
+                    "    total = apply(f3, total);\n" +
+                    "    total = apply(f4, total);\n" +
+                    "    total = apply(f5, total);\n" +
+                    "    i = i + 1;\n" +
+                    "  }\n" +
+                    "  return total;\n" +
+                    "}\n";
+
+    private Context context;
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    private Value eval(boolean bytecode, String cacheSize, String source) {
+        context = Context.newBuilder("lazy").allowExperimentalOptions(true).option("lazy.MegamorphicCacheSize", cacheSize).option("lazy.MegamorphicPromotionThreshold",
+                        "10").option("lazy.MegamorphicDirectCalls", "2").option("lazy.Bytecode", Boolean.toString(bytecode)).build();
+        context.eval("lazy", source);
+        return context.getBindings("lazy").getMember("run");
+    }
+
+    private void testCallbacks(boolean bytecode, String cacheSize) {
+        Value run = eval(bytecode, cacheSize, CALLBACKS);
+        assertEquals(15, run.execute(1).asInt());
+        assertEquals(1500, run.execute(100).asInt());
+        /* A promoted callee that is redefined is called with its new call target. */
+        context.eval("lazy", "function f1(x) { return x + 11; }");
+        assertEquals(2500, run.execute(100).asInt());
+    }
+
+    @Test
+    public void testCallbacks() {
+        testCallbacks(false, "8");
+    }
+
+    @Test
+    public void testCallbacksBytecode() {
+        testCallbacks(true, "8");
+    }
+
+    @Test
+    public void testCallbacksSmallCache() {
+        /* All targets share one entry, so none of them is counted up to the threshold. */
+        testCallbacks(false, "1");
+    }
+
+    @Test
+    public void testCallbacksWithoutCache() {
+        testCallbacks(false, "0");
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.test;
+
+import static com.guillermomolina.lazylanguage.test.LLJavaInteropTest.toUnixString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LLParseCacheTest {
+
+    private Engine engine;
+    private Context c1;
+    private Context c2;
+    private ByteArrayOutputStream os1;
+    private ByteArrayOutputStream os2;
+
+    @Before
+    public void initializeEngine() {
+        engine = Engine.create();
+        os1 = new ByteArrayOutputStream();
+        os2 = new ByteArrayOutputStream();
+        c1 = Context.newBuilder("lazy").engine(engine).out(os1).build();
+        c2 = Context.newBuilder("lazy").engine(engine).out(os2).build();
+    }
+
+    @After
+    public void closeEngine() {
+        c1.close();
+        c2.close();
+        engine.close();
+    }
+
+    @Test
+    public void sameSourceRegistersFunctionsInEveryContext() {
+        // @formatter:off
+        String code =
+            "function add(a, b) { return a + b; }\n" +
+            "function main() { println(add(40, 2)); }\n";
+        // @formatter:on
+        c1.eval("lazy", code);
+        c2.eval("lazy", code);
+        assertEquals("42\n", toUnixString(os1));
+        assertEquals("42\n", toUnixString(os2));
+        assertNotNull(c1.getBindings("lazy").getMember("add"));
+        assertNotNull(c2.getBindings("lazy").getMember("add"));
+    }
+
+    @Test
+    public void sharedTreesCallFunctionsOfTheirOwnContext() {
+        // @formatter:off
+        String code =
+            "function foo() { return test(40, 2); }\n";
+        // @formatter:on
+        c1.eval("lazy", code);
+        c2.eval("lazy", code);
+        c1.eval("lazy", "function main() { defineFunction(\"function test(a, b) { return a + b; }\"); }");
+        c2.eval("lazy", "function main() { defineFunction(\"function test(a, b) { return a - b; }\"); }");
+        assertEquals(42, c1.getBindings("lazy").getMember("foo").execute().asInt());
+        assertEquals(38, c2.getBindings("lazy").getMember("foo").execute().asInt());
+    }
+
+    @Test
+    public void manyContextsCallFunctionsOfTheirOwnContext() {
+        /* More contexts than a function literal caches the functions of. */
+        Context[] contexts = new Context[5];
+        try {
+            for (int i = 0; i < contexts.length; i++) {
+                contexts[i] = Context.newBuilder("lazy").engine(engine).build();
+                contexts[i].eval("lazy", "function add(a, b) { return a + b; }\n" +
+                                "function foo(n) { return add(test(), n); }");
+                contexts[i].eval("lazy", "function main() { defineFunction(\"function test() { return " + i + "; }\"); }");
+            }
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < contexts.length; i++) {
+                    assertEquals(i + 10, contexts[i].getBindings("lazy").getMember("foo").execute(10).asInt());
+                }
+            }
+        } finally {
+            for (Context context : contexts) {
+                if (context != null) {
+                    context.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void disabledCacheStillParses() {
+        try (Context context = Context.newBuilder("lazy").allowExperimentalOptions(true).option("lazy.ParseCacheSize", "0").build()) {
+            assertEquals(3, context.eval("lazy", "function main() { return 1 + 2; }").asInt());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.graalvm.polyglot.Context;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.guillermomolina.lazylanguage.LLLanguage;
+import com.guillermomolina.lazylanguage.builtins.LLBuiltinNode;
+import com.guillermomolina.lazylanguage.runtime.LLFunction;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+
+public class LLPurityTest {
+
+    @NodeInfo(shortName = "isPure")
+    abstract static class IsPureBuiltin extends LLBuiltinNode {
+
+        @Specialization
+        @TruffleBoundary
+        boolean isPure(LLFunction function) {
+            return function.isPure();
+        }
+    }
+
+    private Context context;
+
+    @BeforeClass
+    public static void installBuiltin() {
+        LLLanguage.installBuiltin(LLPurityTestFactory.IsPureBuiltinFactory.getInstance());
+    }
+
+    @Before
+    public void setUp() {
+        context = Context.create("lazy");
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    private boolean isPure(String name) {
+        return context.eval("lazy", "function main() { return isPure(" + name + "); }").asBoolean();
+    }
+
+    @Test
+    public void arithmeticIsPure() {
+        context.eval("lazy", "function add(a, b) { return a + b; }");
+        assertTrue(isPure("add"));
+    }
+
+    @Test
+    public void recursionIsPure() {
+        context.eval("lazy", "function fib(n) { if (n < 2) { return 1; } return fib(n - 1) + fib(n - 2); }");
+        assertTrue(isPure("fib"));
+    }
+
+    @Test
+    public void sideEffectsAreNotPure() {
+        context.eval("lazy", "function print(a) { println(a); }\n" +
+                        "function write(o) { o.x = 1; }\n" +
+                        "function call(f) { return f(); }\n" +
+                        "function indirect(a) { print(a); }\n" +
+                        "function typed(a) { return typeOf(a); }");
+        assertFalse(isPure("print"));
+        assertFalse(isPure("write"));
+        assertFalse(isPure("call"));
+        assertFalse(isPure("indirect"));
+        assertTrue(isPure("typed"));
+    }
+
+    @Test
+    public void mutualRecursionWithSideEffectIsNotPure() {
+        context.eval("lazy", "function even(n) { if (n == 0) { return true; } return odd(n - 1); }\n" +
+                        "function odd(n) { if (n == 0) { println(n); return false; } return even(n - 1); }");
+        assertFalse(isPure("even"));
+        assertFalse(isPure("odd"));
+    }
+
+    @Test
+    public void redefinitionOfCalleeInvalidates() {
+        context.eval("lazy", "function inc(a) { return a + 1; }\n" +
+                        "function twice(a) { return inc(inc(a)); }");
+        assertTrue(isPure("twice"));
+        context.eval("lazy", "function inc(a) { println(a); return a + 1; }");
+        assertFalse(isPure("twice"));
+        context.eval("lazy", "function inc(a) { return a + 2; }");
+        assertTrue(isPure("twice"));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LLRedefineFunctionTest {
+
+    private final List<String> installed = Collections.synchronizedList(new ArrayList<>());
+    private Context context;
+
+    @Before
+    public void setUp() {
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if ("lazy.com.guillermomolina.lazylanguage.runtime.LLFunction".equals(record.getLoggerName())) {
+                    installed.add((String) record.getParameters()[0]);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        context = Context.newBuilder("lazy").option("log.lazy.com.guillermomolina.lazylanguage.runtime.LLFunction.level", "FINE").logHandler(handler).build();
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    private int installs(String name) {
+        return Collections.frequency(installed, name);
+    }
+
+    private int define(String code) {
+        context.eval("lazy", "function main() { defineFunction(\"" + code + "\"); }");
+        return context.getBindings("lazy").getMember("test").execute(40, 2).asInt();
+    }
+
+    @Test
+    public void sameCodeKeepsCallTarget() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(42, define("function test(a, b) { return a + b; }"));
+        }
+        assertEquals(1, installs("test"));
+    }
+
+    @Test
+    public void changedFunctionIsInstalled() {
+        assertEquals(42, define("function test(a, b) { return a + b; }"));
+        assertEquals(38, define("function test(a, b) { return a - b; }"));
+        assertEquals(2, installs("test"));
+    }
+
+    @Test
+    public void unchangedFunctionOfChangedCodeKeepsCallTarget() {
+        assertEquals(42, define("function test(a, b) { return a + b; } function other() { return 1; }"));
+        assertEquals(42, define("function other() { return 2; } function test(a, b) { return a + b; }"));
+        assertEquals(1, installs("test"));
+        assertEquals(2, installs("other"));
+        assertEquals(2, context.getBindings("lazy").getMember("other").execute().asInt());
+        /* The kept function refers to the source that defined it last. */
+        assertEquals(40, context.getBindings("lazy").getMember("test").getSourceLocation().getCharIndex());
+    }
+
+    @Test
+    public void sameCodeAtOtherPositionKeepsCallTarget() {
+        context.eval("lazy", "function test(a, b) { return a + b; }");
+        context.eval("lazy", "\n\nfunction test(a, b) { return a + b; }");
+        assertEquals(1, installs("test"));
+        assertEquals(3, context.getBindings("lazy").getMember("test").getSourceLocation().getStartLine());
+        try {
+            context.eval("lazy", "function main() { return test(new(), 1); }");
+            fail("expected a type error");
+        } catch (PolyglotException e) {
+            assertEquals("a + b", e.getSourceLocation().getCharacters().toString());
+            assertEquals(3, e.getSourceLocation().getStartLine());
+        }
+    }
+
+    @Test
+    public void namedCalleeIsRedefined() {
+        context.eval("lazy", "function callTest() { return test(40, 2); }");
+        assertEquals(42, define("function test(a, b) { return a + b; }"));
+        assertEquals(42, context.getBindings("lazy").getMember("callTest").execute().asInt());
+        assertEquals(38, define("function test(a, b) { return a - b; }"));
+        assertEquals(38, context.getBindings("lazy").getMember("callTest").execute().asInt());
+    }
+}
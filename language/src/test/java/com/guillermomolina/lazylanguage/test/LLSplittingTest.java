@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.graalvm.polyglot.Context;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.guillermomolina.lazylanguage.LLLanguage;
+import com.guillermomolina.lazylanguage.builtins.LLBuiltinNode;
+import com.guillermomolina.lazylanguage.runtime.LLFunction;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.nodes.RootNode;
+
+/**
+ * Calls copies of functions, as Truffle does when it splits a function for a caller. The test
+ * runtime does not split, so the {@code callCopy} builtin copies the function like a split would.
+ */
+public class LLSplittingTest {
+
+    @NodeInfo(shortName = "callCopy")
+    abstract static class CallCopyBuiltin extends LLBuiltinNode {
+
+        @Specialization
+        @TruffleBoundary
+        Object callCopy(LLFunction function, Object left, Object right) {
+            RootNode rootNode = function.getCallTarget().getRootNode();
+            assert rootNode.isCloningAllowed();
+            return Truffle.getRuntime().createCallTarget((RootNode) rootNode.deepCopy()).call(left, right);
+        }
+    }
+
+    private Context context;
+
+    @BeforeClass
+    public static void installBuiltin() {
+        LLLanguage.installBuiltin(LLSplittingTestFactory.CallCopyBuiltinFactory.getInstance());
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    private void testCopies(boolean bytecode) {
+        context = Context.newBuilder("lazy").allowExperimentalOptions(true).option("lazy.Bytecode", Boolean.toString(bytecode)).build();
+        context.eval("lazy", "function add(a, b) { return a + b; }\n" +
+                        "function sum(a, b) { return add(a, b) + add(b, a); }\n" +
+                        "function numbers() { i = 0; while (i < 10) { sum(i, 1); i = i + 1; } return sum(1, 2); }\n" +
+                        "function strings() { return callCopy(sum, \"a\", \"b\"); }\n" +
+                        "function both() { return callCopy(sum, 1, 2) + callCopy(sum, \"c\", \"d\"); }");
+        assertEquals(6, context.eval("lazy", "function main() { return numbers(); }").asInt());
+        /* The copy starts with the state of the specialized function. */
+        assertEquals("abba", context.eval("lazy", "function main() { return strings(); }").asString());
+        assertEquals("6cddc", context.eval("lazy", "function main() { return both(); }").asString());
+        /* Executing the copies did not change the function itself. */
+        assertEquals(6, context.eval("lazy", "function main() { return numbers(); }").asInt());
+    }
+
+    @Test
+    public void testCopies() {
+        testCopies(false);
+    }
+
+    @Test
+    public void testCopiesBytecode() {
+        testCopies(true);
+    }
+
+    @Test
+    public void testCopyOfLazyFunction() {
+        context = Context.newBuilder("lazy").allowExperimentalOptions(true).option("lazy.LazyParsing", "true").build();
+        context.eval("lazy", "function add(a, b) { c = a + b; return c; }");
+        /* The copy of a function that was not called yet parses the body itself. */
+        assertEquals(3, context.eval("lazy", "function main() { return callCopy(add, 1, 2); }").asInt());
+        assertEquals(3, context.eval("lazy", "function main() { return add(1, 2); }").asInt());
+        assertEquals("xy", context.eval("lazy", "function main() { return callCopy(add, \"x\", \"y\"); }").asString());
+    }
+}
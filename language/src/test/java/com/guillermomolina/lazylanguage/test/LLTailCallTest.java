@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.guillermomolina.lazylanguage.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.junit.After;
+import org.junit.Test;
+
+public class LLTailCallTest {
+
+    private static final int DEPTH = 1000000;
+
+    private Context context;
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    private Value eval(boolean bytecode, String source, String name) {
+        context = Context.newBuilder("lazy").allowExperimentalOptions(true).option("lazy.TailCalls", "true").option("lazy.Bytecode", Boolean.toString(bytecode)).build();
+        context.eval("lazy", source);
+        return context.getBindings("lazy").getMember(name);
+    }
+
+    private void testSelfRecursion(boolean bytecode) {
+        Value count = eval(bytecode, "function count(n, total) { if (n == 0) { return total; } return count(n - 1, total + 1); }", "count");
+        assertEquals(DEPTH, count.execute(DEPTH, 0).asInt());
+    }
+
+    @Test
+    public void testSelfRecursion() {
+        testSelfRecursion(false);
+    }
+
+    @Test
+    public void testSelfRecursionBytecode() {
+        testSelfRecursion(true);
+    }
+
+    private void testMutualRecursion(boolean bytecode) {
+        Value isEven = eval(bytecode, "function isEven(n) { if (n == 0) { return 1; } return isOdd(n - 1); }\n" +
+                        "function isOdd(n) { if (n == 0) { return 0; } return isEven(n - 1); }", "isEven");
+        assertEquals(1, isEven.execute(DEPTH).asInt());
+        assertEquals(0, isEven.execute(DEPTH + 1).asInt());
+    }
+
+    @Test
+    public void testMutualRecursion() {
+        testMutualRecursion(false);
+    }
+
+    @Test
+    public void testMutualRecursionBytecode() {
+        testMutualRecursion(true);
+    }
+
+    @Test
+    public void testOtherArgumentCount() {
+        /* The frame has one argument less than the call, so it is not reused. */
+        Value count = eval(false, "function count(n, total) { if (n == 0) { return total; } if (total == 0) { return count(n - 1, 1, 0); } return count(n - 1, total + 1); }",
+                        "count");
+        assertEquals(DEPTH, count.execute(DEPTH, 0).asInt());
+    }
+
+    @Test
+    public void testNotInTailPosition() {
+        Value fac = eval(false, "function fac(n) { if (n <= 1) { return 1; } return fac(n - 1) * n; }", "fac");
+        assertEquals(120, fac.execute(5).asInt());
+    }
+}